@@ -0,0 +1,127 @@
+package com.seungh1024.bench;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.seungh1024.entity.QMember;
+import com.seungh1024.repository.support.AggregateSubqueries;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.seungh1024.entity.QMember.member;
+
+/**
+ * 팀별 집계와 비교하는 상관 서브쿼리를 그대로 실행할 때와 AggregateSubqueries.joinGrouped 로 derived table join 으로 바꿔 실행할 때의 비교.
+ * where 절 모양은 결과 row 를 옮기는 비용을 빼려고 count 로 센다.
+ * H2 는 MySQL 과 서브쿼리 실행 방식이 달라서 차이가 나지 않는다. MySQL 에서 실행한다. (BenchContext 참고)
+ * ./gradlew :server-querydslbench:jmh -PbenchRows=1000000 -PbenchIncludes=AggregateSubquery -PbenchMysqlUrl=jdbc:mysql://localhost:3306/bench
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregateSubqueryBenchmark {
+    private static final int SELECT_LIMIT = 1_000;
+
+    @Param({"10000"})
+    int rows;
+
+    private final QMember subMember = new QMember("subMember");
+
+    private ConfigurableApplicationContext context;
+    private EntityManager em;
+    private JPAQueryFactory queryFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchContext.start(rows);
+        em = context.getBean(EntityManagerFactory.class).createEntityManager();
+        queryFactory = new JPAQueryFactory(em);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        context.close();
+    }
+
+    // ===== age = 팀의 max(age) =====
+
+    @Benchmark
+    public Long subqueryEqTeamMax() {
+        return eqTeamMax().fetchOne();
+    }
+
+    @Benchmark
+    public Long joinEqTeamMax() {
+        return AggregateSubqueries.joinGrouped(em, eqTeamMax()).fetchOne();
+    }
+
+    // ===== age >= 팀의 avg(age) =====
+
+    @Benchmark
+    public Long subqueryGoeTeamAvg() {
+        return goeTeamAvg().fetchOne();
+    }
+
+    @Benchmark
+    public Long joinGoeTeamAvg() {
+        return AggregateSubqueries.joinGrouped(em, goeTeamAvg()).fetchOne();
+    }
+
+    // ===== select username, 팀의 avg(age) =====
+
+    @Benchmark
+    public List<Tuple> subquerySelectTeamAvg() {
+        return selectTeamAvg().fetch();
+    }
+
+    @Benchmark
+    public List<Tuple> joinSelectTeamAvg() {
+        return AggregateSubqueries.joinGrouped(em, selectTeamAvg()).fetch();
+    }
+
+    private JPAQuery<Long> eqTeamMax() {
+        return queryFactory
+                .select(member.count())
+                .from(member)
+                .where(member.age.eq(JPAExpressions.select(subMember.age.max()).from(subMember)
+                        .where(subMember.team.eq(member.team))));
+    }
+
+    private JPAQuery<Long> goeTeamAvg() {
+        return queryFactory
+                .select(member.count())
+                .from(member)
+                .where(member.age.goe(JPAExpressions.select(subMember.age.avg()).from(subMember)
+                        .where(subMember.team.eq(member.team))));
+    }
+
+    private JPAQuery<Tuple> selectTeamAvg() {
+        return queryFactory
+                .select(member.username, JPAExpressions.select(subMember.age.avg()).from(subMember)
+                        .where(subMember.team.eq(member.team)))
+                .from(member)
+                .limit(SELECT_LIMIT);
+    }
+}
@@ -0,0 +1,83 @@
+package com.seungh1024.bench;
+
+import com.seungh1024.QuerydslApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 벤치마크용 애플리케이션 컨텍스트. 인메모리 H2 에 member/team 을 채워서 띄운다.
+ * 시스템 프로퍼티 bench.mysql.url(.username, .password)이 있으면 그 MySQL 을 쓴다. (ddl-auto: create 라서 벤치마크 전용 스키마를 지정한다)
+ * 옵티마이저 차이를 보는 벤치마크(AggregateSubqueryBenchmark 등)는 MySQL 에서 실행해야 의미가 있다.
+ */
+public final class BenchContext {
+    public static final int TEAM_COUNT = 10;
+    private static final int BATCH_SIZE = 5_000;
+    private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+    private BenchContext() {
+    }
+
+    public static ConfigurableApplicationContext start(int rows, String... extraArgs) {
+        return start(WebApplicationType.NONE, rows, extraArgs);
+    }
+
+    public static ConfigurableApplicationContext startWeb(int rows, String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of(extraArgs));
+        args.add("--server.port=0");
+        return start(WebApplicationType.SERVLET, rows, args.toArray(String[]::new));
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType webApplicationType, int rows,
+                                                        String... extraArgs) {
+        String mysqlUrl = System.getProperty("bench.mysql.url");
+        List<String> args = new ArrayList<>(mysqlUrl != null ? List.of(
+                "--spring.datasource.url=" + mysqlUrl,
+                "--spring.datasource.username=" + System.getProperty("bench.mysql.username", "root"),
+                "--spring.datasource.password=" + System.getProperty("bench.mysql.password", "")
+        ) : List.of(
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.url=jdbc:h2:mem:bench" + DATABASE_SEQUENCE.incrementAndGet()
+                        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password="
+        ));
+        args.addAll(List.of(
+                "--spring.profiles.active=bench",
+                "--spring.jpa.properties.hibernate.show_sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--spring.jpa.properties.hibernate.use_sql_comments=false",
+                "--decorator.datasource.p6spy.enable-logging=false",
+                "--member.stream.fetch-size=1000"
+        ));
+        args.addAll(List.of(extraArgs));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(webApplicationType)
+                .run(args.toArray(String[]::new));
+        seed(context.getBean(JdbcTemplate.class), rows, mysqlUrl != null);
+        return context;
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int rows, boolean mysql) {
+        for (int i = 0; i < TEAM_COUNT; i++) {
+            jdbcTemplate.update("insert into team (name) values (?)", "team" + i);
+        }
+        List<Long> teamIds = jdbcTemplate.queryForList("select id from team order by id", Long.class);
+
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{"member" + i, i % 100, teamIds.get(i % TEAM_COUNT)});
+            if (batch.size() == BATCH_SIZE || i == rows - 1) {
+                jdbcTemplate.batchUpdate("insert into member (username, age, team_id) values (?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        jdbcTemplate.execute(mysql ? "analyze table team, member" : "analyze");
+    }
+}
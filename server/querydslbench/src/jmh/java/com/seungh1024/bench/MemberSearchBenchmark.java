@@ -0,0 +1,131 @@
+package com.seungh1024.bench;
+
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.dto.MemberTeamDto;
+import com.seungh1024.repository.MemberJpaRepository;
+import com.seungh1024.repository.MemberQueryRepository;
+import com.seungh1024.repository.MemberRepository;
+import com.seungh1024.repository.MemberRepositoryImpl;
+import com.seungh1024.repository.MemberSearchTemplates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 같은 동적 검색을 하는 네 가지 구현의 비용 비교.
+ * render* 는 각 repository 의 쿼리 조립 코드로 JPQL 문자열을 만드는 데까지, execute* 는 실제 repository 메서드 호출 전체를 잰다.
+ * 호출당 할당량은 gc 프로파일러(build.gradle 에 설정)로 본다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberSearchBenchmark {
+
+    @Param({"10000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+
+    private MemberJpaRepository memberJpaRepository;
+    private MemberQueryRepository memberQueryRepository;
+    private MemberRepository memberRepository;
+    private MemberRepositoryImpl memberRepositoryImpl;
+    private MemberSearchTemplates memberSearchTemplates;
+
+    private final MemberSearchCondition condition = new MemberSearchCondition();
+    private final PageRequest pageRequest = PageRequest.of(0, 20);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchContext.start(rows);
+
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        memberQueryRepository = context.getBean(MemberQueryRepository.class);
+        memberRepository = context.getBean(MemberRepository.class);
+        memberRepositoryImpl = context.getBean(MemberRepositoryImpl.class);
+        memberSearchTemplates = context.getBean(MemberSearchTemplates.class);
+
+        condition.setTeamName("team3");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(40);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // ===== JPQL 조립/직렬화 =====
+    // repository 가 실행하는 쿼리를 repository 자신의 조립 코드로 만든다 (팀 이름 -> 캐시된 팀 id 변환 포함)
+
+    @Benchmark
+    public String renderBooleanBuilder() {
+        return memberJpaRepository.searchByBuilderQuery(condition).toString();
+    }
+
+    @Benchmark
+    public String renderWhereParam() {
+        return memberJpaRepository.searchByParamQuery(condition).toString();
+    }
+
+    @Benchmark
+    public String renderQueryRepository() {
+        return memberQueryRepository.searchQuery(condition).toString();
+    }
+
+    // 조건 모양별로 캐시한 JPQL 을 고르는 데까지 (직렬화는 모양마다 한 번)
+    @Benchmark
+    public String renderCustomRepository() {
+        return memberSearchTemplates.jpql(condition);
+    }
+
+    @Benchmark
+    public String renderSupportFrom() {
+        return memberRepositoryImpl.searchPage2Query(condition, pageRequest).toString();
+    }
+
+    // ===== 실제 실행 =====
+
+    @Benchmark
+    public List<MemberTeamDto> executeBooleanBuilder() {
+        return memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> executeWhereParam() {
+        return memberJpaRepository.searchByParam(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> executeQueryRepository() {
+        return memberQueryRepository.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> executeCustomRepository() {
+        return memberRepository.search(condition);
+    }
+
+    @Benchmark
+    public void executeSupportFromPage() {
+        memberRepositoryImpl.searchPage2(condition, pageRequest);
+    }
+}
@@ -0,0 +1,121 @@
+package com.seungh1024.bench;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Projections;
+import com.seungh1024.dto.MemberTeamDto;
+import com.seungh1024.dto.QMemberTeamDto;
+import com.seungh1024.repository.support.DtoProjections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.seungh1024.entity.QMember.member;
+import static com.seungh1024.entity.QTeam.team;
+
+/**
+ * 조회 결과 row(Object[])를 DTO 로 바꾸는 비용만 비교한다. DB 는 쓰지 않는다.
+ * Querydsl 기본(bean/fields/constructor, @QueryProjection) vs DtoProjections(MethodHandle/LambdaMetafactory) vs 직접 생성자 호출.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    @Param({"10000"})
+    int rows;
+
+    private Object[][] values;
+
+    private final Expression<?>[] args = {
+            member.id.as("memberId"),
+            member.username,
+            member.age,
+            team.id.as("teamId"),
+            team.name.as("teamName")
+    };
+
+    private final FactoryExpression<MemberTeamDto> queryProjection = new QMemberTeamDto(
+            member.id, member.username, member.age, team.id, team.name);
+    private final FactoryExpression<MemberTeamDto> reflectionBean = Projections.bean(MemberTeamDto.class, args);
+    private final FactoryExpression<MemberTeamDto> reflectionFields = Projections.fields(MemberTeamDto.class, args);
+    private final FactoryExpression<MemberTeamDto> reflectionConstructor = Projections.constructor(MemberTeamDto.class,
+            member.id, member.username, member.age, team.id, team.name);
+    private final FactoryExpression<MemberTeamDto> handleBean = DtoProjections.bean(MemberTeamDto.class, args);
+    private final FactoryExpression<MemberTeamDto> handleFields = DtoProjections.fields(MemberTeamDto.class, args);
+    private final FactoryExpression<MemberTeamDto> handleConstructor = DtoProjections.constructor(MemberTeamDto.class,
+            member.id, member.username, member.age, team.id, team.name);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        values = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            long teamId = i % 10;
+            values[i] = new Object[]{(long) i, "member" + i, i % 100, teamId, "team" + teamId};
+        }
+    }
+
+    @Benchmark
+    public void direct(Blackhole blackhole) {
+        for (Object[] row : values) {
+            blackhole.consume(new MemberTeamDto((Long) row[0], (String) row[1], (Integer) row[2], (Long) row[3],
+                    (String) row[4]));
+        }
+    }
+
+    @Benchmark
+    public void queryProjection(Blackhole blackhole) {
+        map(queryProjection, blackhole);
+    }
+
+    @Benchmark
+    public void reflectionBean(Blackhole blackhole) {
+        map(reflectionBean, blackhole);
+    }
+
+    @Benchmark
+    public void reflectionFields(Blackhole blackhole) {
+        map(reflectionFields, blackhole);
+    }
+
+    @Benchmark
+    public void reflectionConstructor(Blackhole blackhole) {
+        map(reflectionConstructor, blackhole);
+    }
+
+    @Benchmark
+    public void handleBean(Blackhole blackhole) {
+        map(handleBean, blackhole);
+    }
+
+    @Benchmark
+    public void handleFields(Blackhole blackhole) {
+        map(handleFields, blackhole);
+    }
+
+    @Benchmark
+    public void handleConstructor(Blackhole blackhole) {
+        map(handleConstructor, blackhole);
+    }
+
+    private void map(FactoryExpression<MemberTeamDto> projection, Blackhole blackhole) {
+        for (Object[] row : values) {
+            blackhole.consume(projection.newInstance(row));
+        }
+    }
+}
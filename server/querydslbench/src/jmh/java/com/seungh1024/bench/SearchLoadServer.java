@@ -0,0 +1,50 @@
+package com.seungh1024.bench;
+
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * SearchLoadTest 가 별도 프로세스로 띄우는 서버. 부하를 보내는 HttpClient 스레드가 서버 스레드 수에 섞이지 않게 나눈다.
+ * 뜨면 포트를 파일에 쓰고, 표준 입력으로 "reset" 을 받으면 최대 스레드 수를 초기화하고, 표준 입력이 닫히면 종료한다.
+ *
+ * args: virtual rows portFile
+ */
+public final class SearchLoadServer {
+    static final String RESET_PEAK_THREADS = "reset";
+
+    private SearchLoadServer() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean virtual = Boolean.parseBoolean(args[0]);
+        int rows = Integer.parseInt(args[1]);
+        Path portFile = Path.of(args[2]);
+
+        // 풀 크기/요청 스레드 수는 모드별 애플리케이션 설정을 그대로 쓴다
+        try (ConfigurableApplicationContext context = BenchContext.startWeb(rows,
+                "--app.threads.virtual=" + virtual,
+                "--logging.level.root=warn")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            // 쓰는 도중의 파일을 읽지 않도록 다 쓴 뒤에 옮긴다
+            Path written = Files.writeString(Path.of(portFile + ".tmp"), String.valueOf(port));
+            Files.move(written, portFile, StandardCopyOption.ATOMIC_MOVE);
+
+            BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String command;
+            while ((command = commands.readLine()) != null) {
+                if (RESET_PEAK_THREADS.equals(command.trim())) {
+                    // 시작/데이터 적재 때 쓴 스레드는 빼고 부하 구간의 최대치만 본다
+                    ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+                }
+            }
+        }
+    }
+}
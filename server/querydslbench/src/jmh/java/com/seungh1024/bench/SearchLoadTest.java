@@ -0,0 +1,154 @@
+package com.seungh1024.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * /v1/members, /v2/members 에 동시 요청을 계속 보내서 플랫폼 스레드 풀과 가상 스레드 모드의 처리량을 비교한다.
+ * 가상 스레드 모드는 Java 21 이상에서 실행했을 때만 돈다.
+ * 서버는 모드마다 별도 프로세스(SearchLoadServer)로 띄워서 서버 스레드 수에 클라이언트 스레드가 섞이지 않게 하고,
+ * 부하 구간의 서버 최대 플랫폼 스레드 수(jvm.threads.peak)를 같이 출력한다. 가상 스레드는 이 수에 들어가지 않는다.
+ *
+ * ./gradlew :server-querydslbench:loadTest -PloadConcurrency=2000 -PloadSeconds=30 -PbenchRows=100000
+ */
+public class SearchLoadTest {
+    private static final Duration SERVER_START_TIMEOUT = Duration.ofMinutes(5);
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"value\"\\s*:\\s*([0-9.Ee+-]+)");
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.parseInt(args[0]);
+        int seconds = Integer.parseInt(args[1]);
+        int rows = Integer.parseInt(args[2]);
+
+        System.out.println(run(false, concurrency, seconds, rows));
+        if (Runtime.version().feature() >= 21) {
+            System.out.println(run(true, concurrency, seconds, rows));
+        } else {
+            System.out.println("virtual threads skipped: requires Java 21+, running on " + Runtime.version());
+        }
+    }
+
+    private static String run(boolean virtual, int concurrency, int seconds, int rows) throws Exception {
+        Path portFile = Files.createTempFile("search-load-", ".port");
+        Files.delete(portFile);
+        Process server = startServer(virtual, rows, portFile);
+        try {
+            int port = awaitPort(server, portFile);
+            List<URI> targets = List.of(
+                    URI.create("http://localhost:" + port + "/v1/members?teamName=team3&ageGoe=20&ageLoe=25"),
+                    URI.create("http://localhost:" + port + "/v2/members?ageGoe=30&page=3&size=20"));
+
+            HttpClient client = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            OutputStream commands = server.getOutputStream();
+            commands.write((SearchLoadServer.RESET_PEAK_THREADS + "\n").getBytes(StandardCharsets.UTF_8));
+            commands.flush();
+            AtomicLong completed = new AtomicLong();
+            AtomicLong failed = new AtomicLong();
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+
+            // 요청 하나가 끝나면 바로 다음 요청을 보내는 클라이언트를 concurrency 개 돌린다
+            List<CompletableFuture<Void>> clients = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                URI target = targets.get(i % targets.size());
+                clients.add(loop(client, target, deadline, completed, failed, latencies));
+            }
+            CompletableFuture.allOf(clients.toArray(CompletableFuture[]::new)).join();
+
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            long p99 = sorted.isEmpty() ? 0 : sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * 0.99) - 1));
+            return String.format("virtual=%s concurrency=%d requests/s=%.1f failed=%d p99=%dms serverPeakThreads=%d",
+                    virtual, concurrency, completed.get() / (double) seconds, failed.get(),
+                    Duration.ofNanos(p99).toMillis(), peakThreads(client, port));
+        } finally {
+            // 표준 입력을 닫으면 서버가 컨텍스트를 닫고 종료한다
+            server.getOutputStream().close();
+            if (!server.waitFor(1, TimeUnit.MINUTES)) {
+                server.destroyForcibly();
+            }
+            Files.deleteIfExists(portFile);
+        }
+    }
+
+    private static Process startServer(boolean virtual, int rows, Path portFile) throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path")));
+        for (String property : List.of("bench.mysql.url", "bench.mysql.username", "bench.mysql.password")) {
+            if (System.getProperty(property) != null) {
+                command.add("-D" + property + "=" + System.getProperty(property));
+            }
+        }
+        command.addAll(List.of(SearchLoadServer.class.getName(), String.valueOf(virtual), String.valueOf(rows),
+                portFile.toString()));
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static int awaitPort(Process server, Path portFile) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + SERVER_START_TIMEOUT.toNanos();
+        while (!Files.exists(portFile)) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Load test server exited with " + server.exitValue());
+            }
+            if (System.nanoTime() >= deadline) {
+                throw new IllegalStateException("Load test server did not start within " + SERVER_START_TIMEOUT);
+            }
+            Thread.sleep(200);
+        }
+        return Integer.parseInt(Files.readString(portFile).trim());
+    }
+
+    // 서버 프로세스의 actuator 로 읽는다 (부하를 시작할 때 초기화했다)
+    private static long peakThreads(HttpClient client, int port) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create("http://localhost:" + port + "/actuator/metrics/jvm.threads.peak")).GET().build();
+        String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = METRIC_VALUE.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected jvm.threads.peak response: " + body);
+        }
+        return (long) Double.parseDouble(matcher.group(1));
+    }
+
+    private static CompletableFuture<Void> loop(HttpClient client, URI target, long deadline,
+                                                AtomicLong completed, AtomicLong failed, List<Long> latencies) {
+        if (System.nanoTime() >= deadline) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(30)).GET().build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        completed.incrementAndGet();
+                        latencies.add(System.nanoTime() - start);
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> loop(client, target, deadline, completed, failed, latencies));
+    }
+}
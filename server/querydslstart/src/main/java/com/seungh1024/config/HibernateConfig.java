@@ -0,0 +1,21 @@
+package com.seungh1024.config;
+
+import com.seungh1024.monitor.NonSargableSqlInspector;
+import com.seungh1024.repository.support.TableWriteInspector;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class HibernateConfig {
+
+    // Hibernate 는 StatementInspector 를 하나만 받으므로 순서대로 이어서 등록한다
+    @Bean
+    public HibernatePropertiesCustomizer statementInspectorCustomizer(TableWriteInspector tableWriteInspector,
+                                                                      NonSargableSqlInspector nonSargableSqlInspector) {
+        StatementInspector inspector = sql -> nonSargableSqlInspector.inspect(tableWriteInspector.inspect(sql));
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, inspector);
+    }
+}
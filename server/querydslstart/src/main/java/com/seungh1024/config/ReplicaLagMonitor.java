@@ -0,0 +1,82 @@
+package com.seungh1024.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * replica 복제 지연을 주기적으로 확인한다.
+ * 첫 확인 전, 조회 실패, 복제 중단(지연 값 null), 지연 초과면 사용 불가로 보고 읽기도 primary 로 보낸다.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements InitializingBean, DisposableBean {
+    private final JdbcTemplate replica;
+    private final String lagQuery;
+    private final String lagColumn;
+    private final Duration maxLag;
+    private final Duration checkInterval;
+
+    private ScheduledExecutorService scheduler;
+    private volatile boolean replicaUsable;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, String lagColumn, Duration maxLag,
+                             Duration checkInterval) {
+        this.replica = new JdbcTemplate(replica);
+        this.lagQuery = lagQuery;
+        this.lagColumn = lagColumn;
+        this.maxLag = maxLag;
+        this.checkInterval = checkInterval;
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void check() {
+        boolean usable;
+        try {
+            List<Map<String, Object>> rows = replica.queryForList(lagQuery);
+            Object lag = rows.isEmpty() ? null : rows.get(0).get(lagColumn);
+            usable = lag instanceof Number seconds && seconds.longValue() <= maxLag.toSeconds();
+            if (!usable && replicaUsable) {
+                log.warn("replica 지연 {}초 (기준 {}초), 읽기를 primary 로 보냄", lag, maxLag.toSeconds());
+            }
+        } catch (DataAccessException e) {
+            usable = false;
+            if (replicaUsable) {
+                log.warn("replica 상태 확인 실패, 읽기를 primary 로 보냄", e);
+            }
+        }
+        if (usable && !replicaUsable) {
+            log.info("replica 사용 가능, readOnly 트랜잭션을 replica 로 보냄");
+        }
+        replicaUsable = usable;
+    }
+}
@@ -0,0 +1,36 @@
+package com.seungh1024.config;
+
+import com.seungh1024.repository.support.ReplicaReads;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * readOnly 트랜잭션은 replica 로, 나머지(쓰기 트랜잭션, 트랜잭션 밖 호출)는 primary 로 보낸다.
+ * replica 지연이 기준을 넘거나 상태를 확인할 수 없으면 readOnly 라도 primary 로 보낸다.
+ * replica 로 보낸 트랜잭션은 ReplicaReads 에 표시해서 캐시가 지연된 값을 넣지 않게 한다.
+ * 트랜잭션의 readOnly 여부는 커넥션을 얻은 뒤에 정해지므로 LazyConnectionDataSourceProxy 로 감싸서 써야 한다.
+ */
+public class ReplicationRoutingDataSource extends AbstractRoutingDataSource {
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final ReplicaLagMonitor lagMonitor;
+
+    public ReplicationRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor) {
+        this.lagMonitor = lagMonitor;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && lagMonitor.isReplicaUsable()) {
+            ReplicaReads.markCurrentTransaction();
+            return REPLICA;
+        }
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,153 @@
+package com.seungh1024.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * app.threads.virtual=true 이면 Tomcat 요청 처리, @Async, MVC 비동기 처리(StreamingResponseBody)를 가상 스레드에서 실행한다.
+ * JDBC 대기 중에는 가상 스레드가 캐리어 스레드를 놓아주므로 동시 처리량은 스레드 수가 아니라 커넥션 풀 크기가 정한다.
+ * 그래서 가상 스레드 모드에서는 Hikari 풀 크기를 app.threads.virtual-pool-size 로 바꾼다. (플랫폼 스레드 모드는 spring.datasource.hikari 값 그대로)
+ * 트랜잭션/영속성 컨텍스트는 스레드 바인딩(ThreadLocal)이라 가상 스레드에서도 그대로 동작한다.
+ * 프로젝트는 Java 17 로 빌드하므로 Java 21 API 는 리플렉션으로 호출하고, 21 미만에서 켜면 기동 시 실패한다.
+ */
+@Configuration
+@EnableAsync
+public class ThreadConfig {
+
+    // Tomcat 은 외부에서 넣은 Executor 를 종료하지 않으므로 빈으로 두고 컨텍스트가 닫힐 때(웹 서버가 멈춘 뒤) 종료한다
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "true")
+    public ExecutorService tomcatVirtualThreadExecutor() {
+        return newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(
+            @Qualifier("tomcatVirtualThreadExecutor") ExecutorService executor) {
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * 가상 스레드 모드의 Hikari 풀 크기. 요청 스레드 수가 더 이상 동시 JDBC 호출 수를 묶지 않으므로 풀 크기가 DB 동시성 상한이 된다.
+     * 바인딩(@ConfigurationProperties)이 끝난 뒤, p6spy 로 감싸기 전에 바꾼다. replica 풀도 같은 크기로 맞춘다.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "true")
+    public static BeanPostProcessor virtualThreadPoolSizing(
+            @Value("${app.threads.virtual-pool-size:100}") int poolSize) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    dataSource.setMaximumPoolSize(poolSize);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "true")
+    public AsyncTaskExecutor virtualThreadTaskExecutor() {
+        return new TaskExecutorAdapter(newVirtualThreadPerTaskExecutor());
+    }
+
+    // 아래 count 전용 Executor 빈이 있으면 Boot 기본 applicationTaskExecutor 가 빠지므로 직접 같은 설정으로 등록한다
+    @Lazy
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "false", matchIfMissing = true)
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder taskExecutorBuilder) {
+        return taskExecutorBuilder.build();
+    }
+
+    /**
+     * Querydsl4RepositorySupport.applyPaginationInParallel 의 count 쿼리를 실행한다.
+     * 큐가 차면 호출 스레드에서 실행해서 동시 count 쿼리 수(= 추가로 쓰는 커넥션 수)를 pool-size 로 묶어둔다.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "false", matchIfMissing = true)
+    public ThreadPoolTaskExecutor countQueryExecutor(@Value("${app.count-query.pool-size:8}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("count-query-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(poolSize * 4);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    @Bean(name = "countQueryExecutor")
+    @ConditionalOnProperty(name = "app.threads.virtual", havingValue = "true")
+    public AsyncTaskExecutor virtualCountQueryExecutor() {
+        // 가상 스레드는 개수 제한이 없으므로 동시 count 수는 countQueryPermits 가 제한한다
+        return new TaskExecutorAdapter(newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * 동시에 병렬로 실행하는 count 수. count 는 호출한 쪽이 커넥션을 쥔 채로 커넥션을 하나 더 쓰므로
+     * 커넥션 풀 크기보다 작게 둔다. 허용 수를 다 쓰고 있으면 count 는 호출 스레드에서 순차로 실행한다.
+     */
+    @Bean
+    public Semaphore countQueryPermits(@Value("${app.count-query.max-parallel:8}") int permits) {
+        return new Semaphore(permits);
+    }
+
+    /**
+     * searchAsync/searchPublisher 전용. 스레드 수와 큐를 모두 제한해서 동시에 쓰는 커넥션 수를 묶어두고,
+     * 큐가 차면 호출 스레드에서 실행하지 않고 거절(TaskRejectedException)해서 호출한 쪽이 부하를 알 수 있게 한다.
+     * 가상 스레드 모드에서도 DB 동시성 상한은 같아야 하므로 같은 풀을 쓴다.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor searchExecutor(@Value("${app.search-executor.pool-size:16}") int poolSize,
+                                                 @Value("${app.search-executor.queue-capacity:256}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("search-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        return executor;
+    }
+
+    /**
+     * searchPublisher 가 구독자의 onNext 를 부르는 스레드. 기본값(commonPool)을 쓰면 구독자의 느린 처리가 parallel stream 등
+     * 다른 작업을 막으므로 따로 둔다. DB 를 쓰지 않으므로 searchExecutor 와 나눠서 조회 스레드를 차지하지 않게 한다.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor searchPublisherExecutor(@Value("${app.search-publisher.pool-size:4}") int poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("search-publish-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        return executor;
+    }
+
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("app.threads.virtual requires Java 21 or later, running on "
+                    + Runtime.version(), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+}
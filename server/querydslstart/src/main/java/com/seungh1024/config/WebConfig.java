@@ -0,0 +1,19 @@
+package com.seungh1024.config;
+
+import com.seungh1024.monitor.QueryGuardFilter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+    private final QueryGuardFilter queryGuardFilter;
+
+    // 비동기 처리 스레드에서 실행한 SQL 도 요청의 QueryGuard 범위로 센다 (필터는 Boot 가 서블릿 필터로 등록한다)
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(queryGuardFilter);
+    }
+}
@@ -2,23 +2,57 @@ package com.seungh1024.controller;
 
 import com.seungh1024.entity.Member;
 import com.seungh1024.entity.Team;
+import com.seungh1024.repository.MemberBulkRepository;
 import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Profile("local")
 @Component
 @RequiredArgsConstructor
 public class InitMember {
     private final InitMemberService initMemberService;
+    private final MemberBulkRepository memberBulkRepository;
+
+    @Value("${init.member.count:100}")
+    private int memberCount;
+
+    @Value("${member.bulk.batch-size:1000}")
+    private int batchSize;
 
     @PostConstruct
     public void init(){
-        initMemberService.init();
+        List<Team> teams = initMemberService.init();
+        Team teamA = teams.get(0);
+        Team teamB = teams.get(1);
+
+        // 청크 단위로 각각 커밋해서 트랜잭션과 힙이 데이터 양에 비례해 커지지 않게 한다
+        List<Member> chunk = new ArrayList<>(batchSize);
+        for(int i = 0; i < memberCount; i++){
+            Team selectedTeam = i %2 == 0? teamA : teamB;
+            chunk.add(new Member("member"+i, i, selectedTeam));
+            if(chunk.size() == batchSize){
+                flushChunk(chunk, teams);
+            }
+        }
+        if(!chunk.isEmpty()){
+            flushChunk(chunk, teams);
+        }
+    }
+
+    private void flushChunk(List<Member> chunk, List<Team> teams){
+        memberBulkRepository.saveAll(chunk);
+        chunk.clear();
+        // 준영속 팀의 양방향 컬렉션에 쌓인 Member 참조도 같이 비운다
+        teams.forEach(team -> team.getMembers().clear());
     }
 
     @Component
@@ -27,16 +61,12 @@ public class InitMember {
         private EntityManager em;
 
         @Transactional
-        public void init(){
+        public List<Team> init(){
             Team teamA = new Team("teamA");
             Team teamB = new Team("teamB");
             em.persist(teamA);
             em.persist(teamB);
-
-            for(int i = 0; i < 100; i++){
-                Team selectedTeam = i %2 == 0? teamA : teamB;
-                em.persist(new Member("member"+i, i, selectedTeam));
-            }
+            return List.of(teamA, teamB);
         }
 
     }
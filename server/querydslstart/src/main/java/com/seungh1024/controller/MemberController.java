@@ -1,16 +1,34 @@
 package com.seungh1024.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.seungh1024.dto.CursorSlice;
+import com.seungh1024.dto.MemberCursor;
 import com.seungh1024.dto.MemberSearchCondition;
 import com.seungh1024.dto.MemberTeamDto;
+import com.seungh1024.dto.TeamStatsDto;
 import com.seungh1024.repository.MemberJpaRepository;
+import com.seungh1024.repository.MemberQueryRepository;
 import com.seungh1024.repository.MemberRepository;
+import com.seungh1024.repository.TeamStatsRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequiredArgsConstructor
@@ -18,6 +36,10 @@ public class MemberController {
 
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberQueryRepository memberQueryRepository;
+    private final TeamStatsRepository teamStatsRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition){
@@ -29,4 +51,62 @@ public class MemberController {
     public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable){
         return memberRepository.searchPage(condition,pageable);
     }
+
+    @GetMapping(value = "/v1/members/export", produces = "application/x-ndjson")
+    public StreamingResponseBody exportMembers(MemberSearchCondition condition){
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        // 한 줄에 하나씩 바로 써서 전체 결과를 메모리에 들고 있지 않는다
+        return out -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<MemberTeamDto> members = memberRepository.streamSearch(condition)) {
+                members.forEach(dto -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(dto));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        });
+    }
+
+    @GetMapping("/v3/members")
+    public CursorSlice<MemberTeamDto> searchMemberV3(MemberSearchCondition condition,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(defaultValue = "20") int size){
+        // 잘못된 커서는 서버 오류(500)가 아니라 요청 오류(400)로 돌려준다
+        if (cursor != null) {
+            try {
+                MemberCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+        }
+        return memberRepository.searchSlice(condition, cursor, Math.min(Math.max(size, 1), 1000));
+    }
+
+    // 대시보드처럼 조건 여러 개를 한 번에 조회한다. 결과는 조건 순서대로
+    @PostMapping("/members/batch-search")
+    public List<List<MemberTeamDto>> batchSearch(@RequestBody List<MemberSearchCondition> conditions){
+        try {
+            return memberRepository.batchSearch(conditions);
+        } catch (InvalidDataAccessApiUsageException e) {
+            // 조건이 너무 많거나 조건 없는(전체 조회) 검색이 섞인 경우. repository 의 IllegalArgumentException 이 변환되어 온다
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    // 팀별 인원/나이 집계. member 전체를 group by 하지 않고 team_stats 만 읽는다
+    @GetMapping("/teams/stats")
+    public List<TeamStatsDto> teamStats(){
+        return teamStatsRepository.findAll();
+    }
+
+    // 팀마다 나이가 가장 많은 회원
+    @GetMapping("/teams/oldest-members")
+    public List<MemberTeamDto> oldestMembers(){
+        return memberQueryRepository.findOldestPerTeam();
+    }
 }
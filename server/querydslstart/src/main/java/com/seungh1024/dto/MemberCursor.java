@@ -0,0 +1,54 @@
+package com.seungh1024.dto;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * keyset 페이징용 커서. (member_id) 또는 (age, member_id) 위치를 불투명한 토큰으로 인코딩한다.
+ */
+@Getter
+public class MemberCursor {
+    private static final String ID_PREFIX = "id";
+    private static final String AGE_PREFIX = "age";
+
+    private final boolean ageOrdered;
+    private final Integer age;
+    private final Long memberId;
+
+    private MemberCursor(boolean ageOrdered, Integer age, Long memberId) {
+        this.ageOrdered = ageOrdered;
+        this.age = age;
+        this.memberId = memberId;
+    }
+
+    public static MemberCursor ofId(Long memberId) {
+        return new MemberCursor(false, null, memberId);
+    }
+
+    public static MemberCursor ofAge(int age, Long memberId) {
+        return new MemberCursor(true, age, memberId);
+    }
+
+    public String encode() {
+        String raw = ageOrdered ? AGE_PREFIX + ":" + age + ":" + memberId : ID_PREFIX + ":" + memberId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MemberCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length == 2 && ID_PREFIX.equals(parts[0])) {
+                return ofId(Long.parseLong(parts[1]));
+            }
+            if (parts.length == 3 && AGE_PREFIX.equals(parts[0])) {
+                return ofAge(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException 포함, 아래에서 동일하게 처리
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + token);
+    }
+}
@@ -7,7 +7,12 @@ public class MemberSearchCondition {
     //회원명, 팀명, 나이(ageGoe, ageLoe)
 
     private String username;
+    private UsernameMatch usernameMatch;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
+
+    public UsernameMatch usernameMatchOrDefault() {
+        return usernameMatch != null ? usernameMatch : UsernameMatch.EXACT;
+    }
 }
@@ -0,0 +1,7 @@
+package com.seungh1024.dto;
+
+/**
+ * MemberTeamDto 의 불변 버전. JDBC ResultSet 에서 바로 만들거나 DtoProjections.constructor 로 프로젝션한다.
+ */
+public record MemberTeamRecord(Long memberId, String username, int age, Long teamId, String teamName) {
+}
@@ -0,0 +1,29 @@
+package com.seungh1024.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+
+@Data
+public class TeamStatsDto {
+    private Long teamId;
+    private String teamName;
+    private long memberCount;
+    private long ageSum;
+    private Double ageAvg;
+    private Integer ageMin;
+    private Integer ageMax;
+
+    public TeamStatsDto(){};
+
+    @QueryProjection
+    public TeamStatsDto(Long teamId, String teamName, long memberCount, long ageSum, Integer ageMin, Integer ageMax) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.memberCount = memberCount;
+        this.ageSum = ageSum;
+        // member 가 없는 팀은 avg(age) 와 같이 null
+        this.ageAvg = memberCount == 0 ? null : (double) ageSum / memberCount;
+        this.ageMin = ageMin;
+        this.ageMax = ageMax;
+    }
+}
@@ -0,0 +1,15 @@
+package com.seungh1024.dto;
+
+/**
+ * username 검색 방식. 지정하지 않으면 EXACT.
+ */
+public enum UsernameMatch {
+    // username = ?
+    EXACT,
+    // username like '값%' (인덱스 범위 검색)
+    PREFIX,
+    // username like '%값%' (trigram 인덱스로 후보 id 를 먼저 좁힌다)
+    CONTAINS,
+    // 대소문자 무시 일치 (username_lower 가상 컬럼 인덱스)
+    IGNORE_CASE
+}
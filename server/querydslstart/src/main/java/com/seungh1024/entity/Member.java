@@ -10,6 +10,16 @@ import lombok.ToString;
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age"})
+@Table(indexes = {
+        // username 검색(findByUsername 포함), username + 나이 범위
+        @Index(name = "idx_member_username_age", columnList = "username, age"),
+        // 팀 조건 + 나이 범위. team_id FK 인덱스 역할도 한다
+        @Index(name = "idx_member_team_age", columnList = "team_id, age"),
+        // 나이 범위만 있는 검색
+        @Index(name = "idx_member_age", columnList = "age"),
+        // 대소문자 무시 username 검색 (username_lower)
+        @Index(name = "idx_member_username_lower", columnList = "username_lower")
+})
 public class Member {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -18,6 +28,12 @@ public class Member {
 
     private String username;
 
+    // lower(username) 을 DB 가 계산하는 가상 컬럼. lower() 를 where 에 쓰지 않고 인덱스로 대소문자 무시 검색을 한다
+    @Getter(AccessLevel.NONE)
+    @Column(name = "username_lower", insertable = false, updatable = false,
+            columnDefinition = "varchar(255) generated always as (lower(username))")
+    private String usernameLower;
+
     private int age;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -44,4 +60,8 @@ public class Member {
         this.team = team;
         team.getMembers().add(this);
     }
+
+    public void changeAge(int age){
+        this.age = age;
+    }
 }
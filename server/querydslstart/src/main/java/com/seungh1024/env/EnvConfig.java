@@ -3,7 +3,8 @@ package com.seungh1024.env;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
 
+// 벤치마크처럼 접속 정보를 직접 넘기는 실행에서는 env.properties 가 없어도 뜨도록 한다
 @Configuration
-@PropertySource("classpath:properties/env.properties")
+@PropertySource(value = "classpath:properties/env.properties", ignoreResourceNotFound = true)
 public class EnvConfig {
 }
@@ -0,0 +1,120 @@
+package com.seungh1024.monitor;
+
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.dto.UsernameMatch;
+import com.seungh1024.repository.MemberSearchTemplates;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * member 검색 쿼리 모양별로 EXPLAIN 을 실행해서 쓸 수 있는 인덱스가 하나도 없는 full scan 을 찾는다.
+ * 테이블이 작으면 인덱스가 있어도 옵티마이저가 full scan 을 고를 수 있으므로 possible_keys 가 비어 있는 경우만 문제로 본다.
+ * EXPLAIN 결과 형식은 MySQL 기준이고, 다른 DB 면 점검을 건너뛴다.
+ */
+@Slf4j
+@Component
+public class IndexAdvisor {
+    // EXPLAIN 에 넣을 예시 값. 실제 데이터가 없어도 실행 계획은 나온다
+    private static final List<Long> SAMPLE_TEAM_IDS = List.of(1L);
+    private static final List<Long> SAMPLE_USERNAME_IDS = List.of(1L, 2L);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MemberSearchTemplates searchTemplates;
+    private final boolean onStartup;
+
+    public IndexAdvisor(NamedParameterJdbcTemplate jdbcTemplate, MemberSearchTemplates searchTemplates,
+                        @Value("${index-advisor.on-startup:false}") boolean onStartup) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchTemplates = searchTemplates;
+        this.onStartup = onStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void adviseOnStartup() {
+        if (!onStartup) {
+            return;
+        }
+        List<FullScan> fullScans = findFullScans();
+        if (fullScans.isEmpty()) {
+            log.info("index advisor: 검색 쿼리에서 인덱스 없는 full scan 없음");
+        }
+        for (FullScan fullScan : fullScans) {
+            log.warn("index advisor: [{}] {} 테이블 full scan - {}", fullScan.shape(), fullScan.table(), fullScan.sql());
+        }
+    }
+
+    public List<FullScan> findFullScans() {
+        List<FullScan> fullScans = new ArrayList<>();
+        for (Statement statement : statements()) {
+            List<Map<String, Object>> plan = jdbcTemplate.queryForList("explain " + statement.sql(), statement.params());
+            for (Map<String, Object> row : plan) {
+                if (!row.containsKey("type")) {
+                    log.info("index advisor: MySQL 형식의 EXPLAIN 결과가 아니라서 점검을 건너뜀");
+                    return List.of();
+                }
+                if ("ALL".equals(row.get("type")) && row.get("possible_keys") == null) {
+                    fullScans.add(new FullScan(statement.shape(), String.valueOf(row.get("table")), statement.sql()));
+                }
+            }
+        }
+        return fullScans;
+    }
+
+    /**
+     * 조건이 하나 이상 있는 검색 모양(15가지), username prefix/contains(trigram 후보 id) 검색과 팀 이름 -> id 조회.
+     * 검색 SQL 은 MemberSearchTemplates 가 실제 검색과 같은 조건식으로 만든다. 조건이 없는 검색은 원래 전체 조회라서 제외한다.
+     */
+    private List<Statement> statements() {
+        List<Statement> statements = new ArrayList<>();
+        for (int shape = 1; shape < 16; shape++) {
+            List<String> names = new ArrayList<>();
+            MemberSearchCondition condition = new MemberSearchCondition();
+            if ((shape & 1) != 0) {
+                names.add("username");
+                condition.setUsername("member1");
+            }
+            if ((shape & 2) != 0) {
+                names.add("teamName");
+            }
+            if ((shape & 4) != 0) {
+                names.add("ageGoe");
+                condition.setAgeGoe(10);
+            }
+            if ((shape & 8) != 0) {
+                names.add("ageLoe");
+                condition.setAgeLoe(40);
+            }
+            statements.add(search(String.join("+", names), condition, (shape & 2) != 0 ? SAMPLE_TEAM_IDS : null));
+        }
+        // username 검색 방식 (UsernameMatch)
+        for (UsernameMatch match : List.of(UsernameMatch.PREFIX, UsernameMatch.CONTAINS, UsernameMatch.IGNORE_CASE)) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername("member");
+            condition.setUsernameMatch(match);
+            statements.add(search("username:" + match.name().toLowerCase(Locale.ROOT), condition, null));
+        }
+        statements.add(new Statement("teamName->id", "select t.id from team t where t.name = :name",
+                Map.of("name", "teamA")));
+        return statements;
+    }
+
+    private Statement search(String shape, MemberSearchCondition condition, List<Long> teamIds) {
+        MemberSearchTemplates.SqlSearch sql = searchTemplates.toSql(condition, teamIds, SAMPLE_USERNAME_IDS);
+        return new Statement(shape, sql.sql(), sql.params());
+    }
+
+    private record Statement(String shape, String sql, Map<String, Object> params) {
+    }
+
+    public record FullScan(String shape, String table, String sql) {
+    }
+}
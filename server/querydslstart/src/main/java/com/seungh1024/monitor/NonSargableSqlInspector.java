@@ -0,0 +1,156 @@
+package com.seungh1024.monitor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hibernate 가 실행하는 SQL 의 where 절에서 컬럼을 함수/연산으로 감싼 조건, '%' 로 시작하는 like 처럼 인덱스를 못 쓰는 조건을 찾아 경고한다.
+ * 바깥 쿼리의 where 절만 본다. order by/group by 같은 다음 절과 서브쿼리 괄호 안은 인덱스 조건이 아니므로 보지 않는다.
+ * 같은 SQL 은 한 번만 로그를 남기고, 매번 sql.non_sargable 카운터를 올린다.
+ * SqlFunctionRegistry.sargable 로 바꿀 수 있는 조건은 바꾼 뒤 실행해야 한다.
+ */
+@Slf4j
+@Component
+public class NonSargableSqlInspector implements StatementInspector {
+    public static final String METRIC = "sql.non_sargable";
+    private static final int MAX_WARNED = 1_000;
+
+    // use_sql_comments 로 붙는 JPQL 주석은 보지 않는다
+    private static final Pattern LEADING_COMMENT = Pattern.compile("^\\s*/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern WHERE = Pattern.compile("\\swhere\\s");
+    // where 절 다음에 올 수 있는 절
+    private static final Pattern CLAUSE_END = Pattern.compile(
+            "\\s(group\\s+by|order\\s+by|having|window|limit|offset|fetch|for\\s+update|union|intersect|except)\\b");
+    private static final Pattern SUBQUERY = Pattern.compile("\\(\\s*select\\b");
+    // alias.column 을 인자로 받는 함수
+    private static final Pattern FUNCTION_ON_COLUMN = Pattern.compile(
+            "\\b(lower|upper|substring|substr|replace|trim|ltrim|rtrim|concat|length|char_length|cast|coalesce|ifnull"
+                    + "|abs|round|year|month|day|date|date_format)\\s*\\(\\s*[a-z_][a-z0-9_]*\\.[a-z_][a-z0-9_]*");
+    // alias.column + ? 처럼 컬럼 쪽에 연산이 붙은 것
+    private static final Pattern ARITHMETIC_ON_COLUMN = Pattern.compile(
+            "\\b[a-z_][a-z0-9_]*\\.[a-z_][a-z0-9_]*\\s*[-+*/]\\s*(\\?|\\d)");
+    // 리터럴로 들어온 경우만 보인다 (바인딩 값은 SQL 에 없다)
+    private static final Pattern LEADING_WILDCARD = Pattern.compile("\\blike\\s+'%");
+    private static final Map<String, Pattern> CHECKS = Map.of(
+            "function", FUNCTION_ON_COLUMN,
+            "arithmetic", ARITHMETIC_ON_COLUMN,
+            "leading-wildcard", LEADING_WILDCARD);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Set<String> warned = ConcurrentHashMap.newKeySet();
+
+    public NonSargableSqlInspector(MeterRegistry meterRegistry,
+                                   @Value("${sql.non-sargable.warn:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (!enabled) {
+            return sql;
+        }
+        List<String> reasons = reasons(sql);
+        if (!reasons.isEmpty()) {
+            reasons.forEach(reason -> meterRegistry.counter(METRIC, "reason", reason).increment());
+            if (warned.size() >= MAX_WARNED) {
+                warned.clear();
+            }
+            if (warned.add(sql)) {
+                log.warn("인덱스를 쓸 수 없는 조건 {}: {}", reasons, sql);
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * where 절에서 찾은 문제 종류 (function, arithmetic, leading-wildcard). 없으면 빈 목록.
+     */
+    public List<String> reasons(String sql) {
+        String statement = LEADING_COMMENT.matcher(sql).replaceFirst("").toLowerCase(Locale.ROOT);
+        String predicates = whereClause(statement);
+        if (predicates == null) {
+            return List.of();
+        }
+        List<String> reasons = new ArrayList<>(3);
+        for (Map.Entry<String, Pattern> check : CHECKS.entrySet()) {
+            if (check.getValue().matcher(predicates).find()) {
+                reasons.add(check.getKey());
+            }
+        }
+        return reasons;
+    }
+
+    /**
+     * 바깥 쿼리의 where 절. 서브쿼리는 괄호 안을 빼고 (?) 로 남긴다. where 가 없으면 null.
+     */
+    private static String whereClause(String statement) {
+        Matcher where = WHERE.matcher(statement);
+        Matcher end = CLAUSE_END.matcher(statement);
+        Matcher subquery = SUBQUERY.matcher(statement);
+        StringBuilder predicates = null;
+        int depth = 0;
+        // 지금 건너뛰는 서브쿼리가 시작된 괄호 깊이. 서브쿼리 밖이면 -1
+        int subqueryDepth = -1;
+        for (int i = 0; i < statement.length(); i++) {
+            char c = statement.charAt(i);
+            boolean outside = subqueryDepth < 0;
+            if (c == '\'') {
+                // 문자열 리터럴 안의 괄호/키워드는 세지 않는다
+                int close = statement.indexOf('\'', i + 1);
+                int to = close < 0 ? statement.length() : close + 1;
+                if (outside && predicates != null) {
+                    predicates.append(statement, i, to);
+                }
+                i = to - 1;
+                continue;
+            }
+            if (c == '(') {
+                if (outside && subquery.region(i, statement.length()).lookingAt()) {
+                    subqueryDepth = depth;
+                    if (predicates != null) {
+                        predicates.append("(?");
+                    }
+                }
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth < 0) {
+                    break;
+                }
+                if (depth == subqueryDepth) {
+                    subqueryDepth = -1;
+                }
+            } else if (outside && depth == 0 && Character.isWhitespace(c)) {
+                if (predicates == null) {
+                    if (where.region(i, statement.length()).lookingAt()) {
+                        predicates = new StringBuilder();
+                        i = where.end() - 1;
+                    }
+                    continue;
+                }
+                if (end.region(i, statement.length()).lookingAt()) {
+                    break;
+                }
+            }
+            // 서브쿼리를 닫는 괄호는 subqueryDepth 를 되돌린 뒤라 남는다
+            if (predicates != null && subqueryDepth < 0) {
+                predicates.append(c);
+            }
+        }
+        return predicates != null ? predicates.toString() : null;
+    }
+}
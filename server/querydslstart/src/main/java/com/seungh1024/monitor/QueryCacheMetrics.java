@@ -0,0 +1,24 @@
+package com.seungh1024.monitor;
+
+import com.seungh1024.repository.MemberSearchTemplates;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class QueryCacheMetrics implements MeterBinder {
+    private final MemberSearchTemplates memberSearchTemplates;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("repository.search.template", memberSearchTemplates, MemberSearchTemplates::getHitCount)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("repository.search.template", memberSearchTemplates, MemberSearchTemplates::getMissCount)
+                .tag("result", "miss")
+                .register(registry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.seungh1024.monitor;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * p6spy-spring-boot-starter 가 JdbcEventListener 빈을 DataSource 에 등록해 준다.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryCountListener extends SimpleJdbcEventListener {
+    private final QueryGuard queryGuard;
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        queryGuard.record(statementInformation.getSql());
+    }
+}
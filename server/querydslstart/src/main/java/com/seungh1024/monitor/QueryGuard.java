@@ -0,0 +1,124 @@
+package com.seungh1024.monitor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 한 범위(요청, 테스트 블록) 안에서 실행된 SQL 을 모양별로 세고, 같은 모양이 기준 이상 반복되면 N+1 로 보고 경고하거나 실패시킨다.
+ * 실행된 SQL 은 p6spy 리스너({@link QueryCountListener})가 넘겨준다.
+ * 범위는 스레드에 묶이므로 다른 스레드(비동기 처리)의 SQL 을 같은 범위로 세려면 그 스레드에서 attach/detach 한다.
+ */
+@Slf4j
+@Component
+public class QueryGuard {
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern IN_LIST = Pattern.compile("in\\s*\\((?:\\s*\\?\\s*,?)+\\)", Pattern.CASE_INSENSITIVE);
+
+    private static final ThreadLocal<Deque<Scope>> SCOPES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final int maxSameStatement;
+    private final boolean failOnViolation;
+
+    public QueryGuard(@Value("${query-guard.max-same-statement:10}") int maxSameStatement,
+                      @Value("${query-guard.fail-on-violation:false}") boolean failOnViolation) {
+        this.maxSameStatement = maxSameStatement;
+        this.failOnViolation = failOnViolation;
+    }
+
+    public Scope open(String name) {
+        Scope scope = new Scope(name);
+        SCOPES.get().push(scope);
+        return scope;
+    }
+
+    public boolean isFailOnViolation() {
+        return failOnViolation;
+    }
+
+    /**
+     * 이미 연 범위를 지금 스레드에도 건다. 끝나면 같은 스레드에서 detach 한다.
+     */
+    public void attach(Scope scope) {
+        SCOPES.get().push(scope);
+    }
+
+    public void detach(Scope scope) {
+        Deque<Scope> scopes = SCOPES.get();
+        scopes.remove(scope);
+        if (scopes.isEmpty()) {
+            SCOPES.remove();
+        }
+    }
+
+    void record(String sql) {
+        Deque<Scope> scopes = SCOPES.get();
+        if (scopes.isEmpty()) {
+            return;
+        }
+        String shape = shapeOf(sql);
+        for (Scope scope : scopes) {
+            scope.counts.merge(shape, 1, Integer::sum);
+        }
+    }
+
+    // 값과 IN 목록 길이만 다른 SQL 은 같은 모양으로 본다
+    static String shapeOf(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("in (...)");
+        return shape.replaceAll("\\s+", " ").trim();
+    }
+
+    public class Scope implements AutoCloseable {
+        private final String name;
+        // 요청 스레드와 비동기 처리 스레드가 같이 센다
+        private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+
+        private Scope(String name) {
+            this.name = name;
+        }
+
+        public int totalCount() {
+            return counts.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        public Map<String, Integer> getCounts() {
+            return Map.copyOf(counts);
+        }
+
+        /**
+         * 기준을 넘은 SQL 을 경고한다. fail-on-violation 이면 IllegalStateException 을 던진다.
+         */
+        public void report() {
+            List<String> violations = new ArrayList<>();
+            counts.forEach((shape, count) -> {
+                if (count > maxSameStatement) {
+                    violations.add("Possible N+1 in " + name + ": same statement executed " + count + " times: " + shape);
+                }
+            });
+            if (violations.isEmpty()) {
+                return;
+            }
+            if (failOnViolation) {
+                throw new IllegalStateException(String.join("\n", violations));
+            }
+            violations.forEach(log::warn);
+        }
+
+        @Override
+        public void close() {
+            detach(this);
+            report();
+        }
+    }
+}
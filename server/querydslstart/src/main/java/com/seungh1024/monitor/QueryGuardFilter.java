@@ -0,0 +1,89 @@
+package com.seungh1024.monitor;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * 요청 하나를 QueryGuard 범위로 센다. 비동기 처리(StreamingResponseBody 등)는 CallableProcessingInterceptor 로
+ * 실행 스레드에 같은 범위를 걸고, 범위는 ASYNC 재디스패치까지 끝난 뒤에 확인한다.
+ * fail-on-violation 이면 본문을 버퍼에 모아 두었다가 위반이 없을 때만 내보내서, 위반한 요청은 실제로 실패 응답이 된다.
+ * (인터셉터 afterCompletion 에서 던지면 이미 응답을 쓴 뒤라 로그만 남는다)
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryGuardFilter extends OncePerRequestFilter implements CallableProcessingInterceptor {
+    private static final String SCOPE_ATTRIBUTE = QueryGuardFilter.class.getName() + ".scope";
+    private static final String RESPONSE_ATTRIBUTE = QueryGuardFilter.class.getName() + ".response";
+
+    private final QueryGuard queryGuard;
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryGuard.Scope scope;
+        ContentCachingResponseWrapper buffered;
+        if (isAsyncDispatch(request)) {
+            scope = (QueryGuard.Scope) request.getAttribute(SCOPE_ATTRIBUTE);
+            buffered = (ContentCachingResponseWrapper) request.getAttribute(RESPONSE_ATTRIBUTE);
+            queryGuard.attach(scope);
+        } else {
+            scope = queryGuard.open(request.getMethod() + " " + request.getRequestURI());
+            buffered = queryGuard.isFailOnViolation() ? new ContentCachingResponseWrapper(response) : null;
+            request.setAttribute(SCOPE_ATTRIBUTE, scope);
+            if (buffered != null) {
+                request.setAttribute(RESPONSE_ATTRIBUTE, buffered);
+            }
+        }
+
+        try {
+            filterChain.doFilter(request, buffered != null ? buffered : response);
+        } finally {
+            queryGuard.detach(scope);
+        }
+        if (isAsyncStarted(request)) {
+            // 비동기 처리가 끝나고 ASYNC 재디스패치 때 확인한다
+            return;
+        }
+
+        request.removeAttribute(SCOPE_ATTRIBUTE);
+        request.removeAttribute(RESPONSE_ATTRIBUTE);
+        // 위반이면 여기서 예외가 나고 버퍼한 본문은 내보내지 않는다
+        scope.report();
+        if (buffered != null) {
+            buffered.copyBodyToResponse();
+        }
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        Object scope = request.getAttribute(SCOPE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (scope instanceof QueryGuard.Scope queryScope) {
+            queryGuard.attach(queryScope);
+        }
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        Object scope = request.getAttribute(SCOPE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (scope instanceof QueryGuard.Scope queryScope) {
+            queryGuard.detach(queryScope);
+        }
+    }
+}
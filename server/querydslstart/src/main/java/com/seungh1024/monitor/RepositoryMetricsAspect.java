@@ -0,0 +1,199 @@
+package com.seungh1024.monitor;
+
+import com.seungh1024.dto.CursorSlice;
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.dto.UsernameMatch;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * com.seungh1024.repository 의 repository 메서드마다 실행 시간과 반환 row 수를 기록한다.
+ * 검색 조건이 인자로 넘어오면 어떤 필드가 채워졌는지를 태그로 남긴다 (최대 16가지 조합).
+ * CompletableFuture, Stream, Flow.Publisher 를 반환하는 메서드(searchAsync, streamSearch, searchPublisher)는
+ * 반환 시점이 아니라 조회가 끝나는 시점(완료, close, 구독 종료)까지 잰다. Stream 은 소비하는 시간도 들어간다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+    public static final String TIMER = "repository.method";
+    public static final String ROWS = "repository.rows";
+
+    private final MeterRegistry meterRegistry;
+
+    // 쿼리를 만들기만 하고 실행하지 않는 메서드(searchQuery 등)는 재지 않는다
+    @Around("execution(public * *(..)) && !execution(com.querydsl.jpa.JPQLQuery+ *(..)) && ("
+            + "(@within(org.springframework.stereotype.Repository) && within(com.seungh1024.repository..*))"
+            + " || this(com.seungh1024.repository.MemberRepository))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        Tags tags = Tags.of(
+                "repository", repositoryName(joinPoint),
+                "method", joinPoint.getSignature().getName(),
+                "condition", conditionTag(joinPoint.getArgs()));
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            record(sample, tags, "error", null);
+            throw e;
+        }
+
+        // 조회가 반환 뒤에 일어나는 메서드는 실제로 끝나는 시점(완료, close, 구독 종료)에 기록한다
+        if (result instanceof CompletableFuture<?> future) {
+            future.whenComplete((value, error) ->
+                    record(sample, tags, error == null ? "success" : "error", error == null ? rowCount(value) : null));
+            return result;
+        }
+        if (result instanceof Stream<?> stream) {
+            LongAdder rows = new LongAdder();
+            return stream.peek(row -> rows.increment())
+                    .onClose(() -> record(sample, tags, "success", rows.sum()));
+        }
+        if (result instanceof Flow.Publisher<?> publisher) {
+            return timed(publisher, tags);
+        }
+        record(sample, tags, "success", rowCount(result));
+        return result;
+    }
+
+    // 구독마다 구독 시점부터 onComplete/onError/cancel 까지 잰다
+    private <T> Flow.Publisher<T> timed(Flow.Publisher<T> publisher, Tags tags) {
+        return subscriber -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            LongAdder rows = new LongAdder();
+            AtomicBoolean finished = new AtomicBoolean();
+            Consumer<String> finish = outcome -> {
+                if (finished.compareAndSet(false, true)) {
+                    record(sample, tags, outcome, rows.sum());
+                }
+            };
+            publisher.subscribe(new Flow.Subscriber<T>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            finish.accept("cancelled");
+                            subscription.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(T item) {
+                    rows.increment();
+                    subscriber.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    finish.accept("error");
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    finish.accept("success");
+                    subscriber.onComplete();
+                }
+            });
+        };
+    }
+
+    private void record(Timer.Sample sample, Tags tags, String outcome, Long rows) {
+        if (rows != null) {
+            DistributionSummary.builder(ROWS)
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(rows);
+        }
+        sample.stop(Timer.builder(TIMER)
+                .tags(tags.and("outcome", outcome))
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public static String conditionTag(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof MemberSearchCondition condition) {
+                return conditionTag(condition);
+            }
+        }
+        return "n/a";
+    }
+
+    public static String conditionTag(MemberSearchCondition condition) {
+        StringJoiner fields = new StringJoiner("+");
+        if (StringUtils.hasText(condition.getUsername())) {
+            // 검색 방식마다 실행 계획이 달라서 나눠서 본다 (EXACT 는 기존 태그 그대로)
+            UsernameMatch match = condition.usernameMatchOrDefault();
+            fields.add(match == UsernameMatch.EXACT ? "username" : "username:" + match.name().toLowerCase(Locale.ROOT));
+        }
+        if (StringUtils.hasText(condition.getTeamName())) {
+            fields.add("teamName");
+        }
+        if (condition.getAgeGoe() != null) {
+            fields.add("ageGoe");
+        }
+        if (condition.getAgeLoe() != null) {
+            fields.add("ageLoe");
+        }
+        return fields.length() == 0 ? "none" : fields.toString();
+    }
+
+    // Spring Data 프록시는 실제 구현체(SimpleJpaRepository) 대신 우리 인터페이스 이름으로 남긴다
+    private static String repositoryName(ProceedingJoinPoint joinPoint) {
+        for (Class<?> type : ClassUtils.getAllInterfaces(joinPoint.getThis())) {
+            if (Repository.class.isAssignableFrom(type) && type.getPackageName().startsWith("com.seungh1024")) {
+                return type.getSimpleName();
+            }
+        }
+        return ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName();
+    }
+
+    private static Long rowCount(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return (long) collection.size();
+        }
+        if (result instanceof Slice<?> slice) {
+            return (long) slice.getNumberOfElements();
+        }
+        if (result instanceof CursorSlice<?> slice) {
+            return (long) slice.getContent().size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1L : 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,160 @@
+package com.seungh1024.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+import static com.seungh1024.entity.QMember.member;
+
+/**
+ * 조건에 맞는 member 를 id 범위(chunk-size)로 나눠서 bulk update/delete 한다.
+ * 트랜잭션 밖에서 호출하면 chunk 마다 따로 커밋해서 한 문장이 잡는 락과 undo 로그를 chunk 크기로 제한한다.
+ * 이미 트랜잭션 안이면 그 트랜잭션에 참여한다 (문장은 나뉘지만 커밋은 한 번).
+ * <p>
+ * bulk 연산은 영속성 컨텍스트를 거치지 않으므로 @Modifying(flushAutomatically, clearAutomatically) 처럼
+ * chunk 실행 전에 flush, 실행 후에 clear 한다. count 캐시는 TableWriteInspector 가 비운다.
+ * 엔티티 리스너도 거치지 않으므로 TeamStats 도 직접 맞춘다. delete 는 지우기 전에 팀별로 센 변화량을 남기고,
+ * update 는 나이/팀이 어떻게 바뀌었는지 모르므로 chunk 범위에 속한 팀(실행 전후)을 다시 집계하도록 표시한다.
+ * update 는 chunk 범위의 username 도 UsernameTrigramIndex 에 다시 넣는다.
+ * 조건은 member 컬럼(또는 서브쿼리)만 써야 한다. 시작할 때 정한 id 범위 밖(이후 insert)은 대상이 아니다.
+ */
+@Slf4j
+@Repository
+public class MemberBulkOperations {
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final TeamStatsRepository teamStatsRepository;
+    private final UsernameTrigramIndex usernameIndex;
+    private final int chunkSize;
+    private final Duration chunkPause;
+
+    public MemberBulkOperations(EntityManager em, PlatformTransactionManager transactionManager,
+                                TeamStatsRepository teamStatsRepository, UsernameTrigramIndex usernameIndex,
+                                @Value("${member.bulk.chunk-size:10000}") int chunkSize,
+                                @Value("${member.bulk.chunk-pause:0ms}") Duration chunkPause) {
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.teamStatsRepository = teamStatsRepository;
+        this.usernameIndex = usernameIndex;
+        this.chunkSize = chunkSize;
+        this.chunkPause = chunkPause;
+    }
+
+    public long update(Predicate where, UnaryOperator<JPAUpdateClause> assignments, Consumer<Progress> progressListener) {
+        return inChunks(where, range -> {
+            // 팀을 옮길 수 있으므로 실행 전후 모두 본다
+            Set<Long> teamIds = new HashSet<>(teamIdsIn(range));
+            long count = assignments.apply(queryFactory.update(member).where(where, range)).execute();
+            teamIds.addAll(teamIdsIn(range));
+            teamStatsRepository.markDirty(teamIds);
+            // username 이 바뀌었을 수 있으므로 chunk 범위를 다시 넣는다 (예전 조각은 후보로만 남는다)
+            for (Tuple row : queryFactory.select(member.id, member.username).from(member).where(range).fetch()) {
+                usernameIndex.index(row.get(member.id), row.get(member.username));
+            }
+            return count;
+        }, progressListener);
+    }
+
+    public long delete(Predicate where, Consumer<Progress> progressListener) {
+        return inChunks(where, range -> {
+            NumberExpression<Long> count = member.count();
+            NumberExpression<Integer> ageSum = member.age.sum();
+            NumberExpression<Integer> ageMin = member.age.min();
+            NumberExpression<Integer> ageMax = member.age.max();
+            List<Tuple> removed = queryFactory
+                    .select(member.team.id, count, ageSum, ageMin, ageMax)
+                    .from(member)
+                    .where(where, range, member.team.isNotNull())
+                    .groupBy(member.team.id)
+                    .fetch();
+            for (Tuple row : removed) {
+                // sum 은 JPA 구현에 따라 Long 으로 올 수 있다
+                teamStatsRepository.removed(row.get(member.team.id), row.get(count), row.get(2, Number.class).longValue(),
+                        row.get(ageMin), row.get(ageMax));
+            }
+            return queryFactory.delete(member).where(where, range).execute();
+        }, progressListener);
+    }
+
+    private long inChunks(Predicate where, ToLongFunction<Predicate> statement, Consumer<Progress> progressListener) {
+        NumberExpression<Long> minId = member.id.min();
+        NumberExpression<Long> maxId = member.id.max();
+        Tuple bounds = transactionTemplate.execute(status -> queryFactory
+                .select(minId, maxId)
+                .from(member)
+                .where(where)
+                .fetchOne());
+        if (bounds == null || bounds.get(minId) == null) {
+            return 0;
+        }
+
+        long lastId = bounds.get(maxId);
+        long affected = 0;
+        int chunks = 0;
+        for (long from = bounds.get(minId); from <= lastId; from += chunkSize) {
+            long to = Math.min(from + chunkSize - 1, lastId);
+            Predicate range = member.id.between(from, to);
+            Long rows = transactionTemplate.execute(status -> {
+                em.flush();
+                long count = statement.applyAsLong(range);
+                em.clear();
+                return count;
+            });
+            affected += rows;
+            chunks++;
+            progressListener.accept(new Progress(chunks, to, lastId, affected));
+
+            if (!chunkPause.isZero() && !pause()) {
+                log.warn("bulk 연산 중단: {}개 chunk, {}건 처리 후 인터럽트", chunks, affected);
+                break;
+            }
+        }
+        return affected;
+    }
+
+    private List<Long> teamIdsIn(Predicate range) {
+        return queryFactory
+                .select(member.team.id).distinct()
+                .from(member)
+                .where(range, member.team.isNotNull())
+                .fetch();
+    }
+
+    // 다른 트랜잭션이 락을 잡을 틈을 준다
+    private boolean pause() {
+        try {
+            Thread.sleep(chunkPause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @param chunks        지금까지 실행한 chunk 수
+     * @param processedToId 처리한 마지막 id
+     * @param lastId        대상 id 범위의 끝
+     * @param affectedRows  지금까지 바뀐 row 수
+     */
+    public record Progress(int chunks, long processedToId, long lastId, long affectedRows) {
+    }
+}
@@ -0,0 +1,70 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.entity.Member;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.Collection;
+
+/**
+ * Member 는 IDENTITY 전략이라 Hibernate 가 insert 를 배치로 묶지 못한다.
+ * 대량 적재는 JPA 를 거치지 않고 JDBC batch insert 로 처리한다.
+ * (MySQL 은 rewriteBatchedStatements=true 일 때 multi-row insert 로 바뀐다)
+ */
+@Repository
+public class MemberBulkRepository {
+    private static final String INSERT_SQL = "insert into member (username, age, team_id) values (?, ?, ?)";
+
+    private final EntityManager em;
+    private final JdbcTemplate jdbcTemplate;
+    private final MemberCountCache countCache;
+    private final TeamStatsRepository teamStatsRepository;
+    private final UsernameTrigramIndex usernameIndex;
+    private final int batchSize;
+
+    public MemberBulkRepository(EntityManager em, JdbcTemplate jdbcTemplate, MemberCountCache countCache,
+                                TeamStatsRepository teamStatsRepository, UsernameTrigramIndex usernameIndex,
+                                @Value("${member.bulk.batch-size:1000}") int batchSize) {
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.countCache = countCache;
+        this.teamStatsRepository = teamStatsRepository;
+        this.usernameIndex = usernameIndex;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 저장된 Member 엔티티에는 id 가 채워지지 않는다. 소속 팀은 미리 저장되어 있어야 한다.
+     */
+    @Transactional
+    public int saveAll(Collection<Member> members) {
+        // 같은 트랜잭션에서 persist 한 팀이 있으면 먼저 DB 에 반영해 FK 를 맞춘다
+        em.flush();
+        // batch insert 는 생성된 id 를 돌려받지 않으므로 이후에 생긴 row 를 username 인덱스에 넣는다
+        Long lastId = jdbcTemplate.queryForObject("select coalesce(max(member_id), 0) from member", Long.class);
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, members, batchSize, (ps, member) -> {
+            ps.setString(1, member.getUsername());
+            ps.setInt(2, member.getAge());
+            if (member.getTeam() == null) {
+                ps.setNull(3, Types.BIGINT);
+            } else if (member.getTeam().getId() != null) {
+                ps.setLong(3, member.getTeam().getId());
+            } else {
+                throw new IllegalArgumentException("Team must be saved before bulk insert: " + member.getTeam());
+            }
+        });
+
+        // JDBC 로 직접 넣었기 때문에 Hibernate 의 쓰기 감지를 거치지 않는다
+        countCache.invalidateOnWrite();
+        usernameIndex.indexAfter(lastId);
+        members.stream()
+                .filter(member -> member.getTeam() != null)
+                .forEach(member -> teamStatsRepository.added(member.getTeam().getId(), member.getAge()));
+        return members.size();
+    }
+}
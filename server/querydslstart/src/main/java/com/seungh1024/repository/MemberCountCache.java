@@ -0,0 +1,118 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.dto.UsernameMatch;
+import com.seungh1024.repository.support.ReplicaReads;
+import com.seungh1024.repository.support.TableWriteInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * searchPage 의 count 결과 캐시. 검색 조건별로 TTL 동안 보관하고 최대 크기를 넘으면 가장 오래 안 쓴 것부터 버린다.
+ * member/team 테이블에 쓰기가 일어나면 전부 비운다. 트랜잭션 안의 쓰기는 커밋 전까지 다른 트랜잭션에 보이지 않으므로
+ * 커밋/롤백이 끝날 때 한 번 더 비운다. 그 전에 시작한 로딩 결과는 세대 번호가 달라져 캐시에 넣지 않는다.
+ * 쓰기를 한 트랜잭션 안에서 읽은 count 는 커밋 전 변경이 섞여 있으므로, replica 에서 읽은 count 는 쓰기가 아직 반영되지 않았을 수 있으므로 넣지 않는다.
+ */
+@Component
+public class MemberCountCache {
+    private final long ttlNanos;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong generation = new AtomicLong();
+
+    public MemberCountCache(TableWriteInspector tableWriteInspector,
+                            @Value("${member.count-cache.ttl:30s}") Duration ttl,
+                            @Value("${member.count-cache.max-size:1000}") int maxSize) {
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        tableWriteInspector.addListener("member", this::invalidateOnWrite);
+        tableWriteInspector.addListener("team", this::invalidateOnWrite);
+    }
+
+    public long getOrLoad(MemberSearchCondition condition, LongSupplier loader) {
+        Key key = Key.of(condition);
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                return entry.count();
+            }
+        }
+
+        // 로딩 중에 쓰기가 끼어들면 오래된 값이 다시 들어가지 않도록 세대 번호를 비교한다
+        long loadedGeneration = generation.get();
+        long count = loader.getAsLong();
+        // 지금 트랜잭션이 member/team 에 쓴 뒤라면 커밋 전 row 가 count 에 들어 있다
+        if (TransactionSynchronizationManager.hasResource(this) || ReplicaReads.isCurrentTransaction()) {
+            return count;
+        }
+        synchronized (entries) {
+            if (generation.get() == loadedGeneration) {
+                entries.put(key, new Entry(count, now));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * member/team 에 쓰기가 실행됐을 때 부른다. 트랜잭션 안이면 끝날 때(afterCompletion) 다시 비운다.
+     */
+    public void invalidateOnWrite() {
+        invalidateAll();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        // 트랜잭션마다 한 번만 등록한다
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MemberCountCache.this);
+                invalidateAll();
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    static boolean isUnfiltered(MemberSearchCondition condition) {
+        return !StringUtils.hasText(condition.getUsername())
+                && !StringUtils.hasText(condition.getTeamName())
+                && condition.getAgeGoe() == null
+                && condition.getAgeLoe() == null;
+    }
+
+    private record Key(String username, UsernameMatch usernameMatch, String teamName, Integer ageGoe, Integer ageLoe) {
+        // 조건 메서드(usernameEq 등)가 무시하는 빈 문자열은 null 과 같은 키로 본다
+        static Key of(MemberSearchCondition condition) {
+            return new Key(
+                    StringUtils.hasText(condition.getUsername()) ? condition.getUsername() : null,
+                    StringUtils.hasText(condition.getUsername()) ? condition.usernameMatchOrDefault() : null,
+                    StringUtils.hasText(condition.getTeamName()) ? condition.getTeamName() : null,
+                    condition.getAgeGoe(),
+                    condition.getAgeLoe());
+        }
+    }
+
+    private record Entry(long count, long loadedAt) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.repository.support.SqlFunctionRegistry;
+
+import static com.seungh1024.entity.QMember.member;
+
+/**
+ * Member 쿼리에서 쓰는 SQL 함수와 가상 컬럼. lower(username) 은 username_lower(idx_member_username_lower)로 바꾼다.
+ */
+public final class MemberFunctions {
+    public static final SqlFunctionRegistry REGISTRY = SqlFunctionRegistry.builder()
+            .lowerColumn(member.username, member.usernameLower)
+            .build();
+
+    private MemberFunctions() {
+    }
+}
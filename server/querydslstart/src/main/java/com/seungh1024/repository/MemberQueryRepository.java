@@ -1,13 +1,19 @@
 package com.seungh1024.repository;
 
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import com.seungh1024.dto.MemberSearchCondition;
 import com.seungh1024.dto.MemberTeamDto;
 import com.seungh1024.dto.QMemberTeamDto;
+import com.seungh1024.entity.QMember;
+import com.seungh1024.repository.support.AggregateSubqueries;
 import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.util.List;
@@ -16,14 +22,24 @@ import static com.seungh1024.entity.QMember.member;
 import static com.seungh1024.entity.QTeam.team;
 
 @Repository
+@Transactional(readOnly = true)
 public class MemberQueryRepository {
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final TeamIdCache teamIdCache;
 
-    public MemberQueryRepository(EntityManager em){
+    public MemberQueryRepository(EntityManager em, TeamIdCache teamIdCache){
+        this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.teamIdCache = teamIdCache;
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return searchQuery(condition).fetch();
+    }
+
+    // search 가 실행하는 쿼리. 벤치마크가 조립/직렬화 비용만 잴 때도 쓴다
+    public JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -39,16 +55,45 @@ public class MemberQueryRepository {
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+                );
+    }
+
+    /**
+     * 팀마다 나이가 가장 많은 회원. 팀별 max(age) 상관 서브쿼리를 팀별로 한 번만 집계하는 derived table join 으로 바꿔서 실행한다.
+     */
+    public List<MemberTeamDto> findOldestPerTeam() {
+        QMember subMember = new QMember("subMember");
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .join(member.team, team)
+                .where(member.age.eq(
+                        JPAExpressions
+                                .select(subMember.age.max())
+                                .from(subMember)
+                                .where(subMember.team.eq(member.team))
+                ))
+                .orderBy(team.id.asc(), member.id.asc());
+        return AggregateSubqueries.joinGrouped(em, query).fetch();
     }
 
     private BooleanExpression usernameEq(String username) {
         return StringUtils.hasText(username) ? member.username.eq(username) : null;
     }
 
+    // 팀 이름을 캐시된 팀 id 로 바꿔서 team join 없이 member.team_id 로 거른다
     private BooleanExpression teamNameEq(String teamName) {
-        return StringUtils.hasText(teamName) ? member.team.name.eq(teamName): null;
+        if (!StringUtils.hasText(teamName)) {
+            return null;
+        }
+        List<Long> teamIds = teamIdCache.findIdsByName(teamName);
+        return teamIds.isEmpty() ? Expressions.FALSE.isTrue() : member.team.id.in(teamIds);
     }
 
     private BooleanExpression ageGoe(Integer ageGoe) {
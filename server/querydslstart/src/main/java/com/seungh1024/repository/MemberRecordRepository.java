@@ -0,0 +1,51 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.dto.MemberTeamRecord;
+import jakarta.persistence.EntityManager;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * search 결과를 MemberTeamRecord 로 ResultSet 에서 한 번에 읽는다.
+ * JPA 조회는 row 마다 Object[](Tuple) 를 만든 뒤 DTO 로 옮기지만 여기서는 row 당 record 와 문자열만 만든다.
+ * 큰 검색 결과를 내려줄 때 쓴다.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class MemberRecordRepository {
+    private static final RowMapper<MemberTeamRecord> ROW_MAPPER = (rs, rowNum) -> {
+        long memberId = rs.getLong(1);
+        String username = rs.getString(2);
+        int age = rs.getInt(3);
+        long teamId = rs.getLong(4);
+        Long nullableTeamId = rs.wasNull() ? null : teamId;
+        return new MemberTeamRecord(memberId, username, age, nullableTeamId, rs.getString(5));
+    };
+
+    private final EntityManager em;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MemberSearchTemplates searchTemplates;
+
+    public MemberRecordRepository(EntityManager em, NamedParameterJdbcTemplate jdbcTemplate,
+                                  MemberSearchTemplates searchTemplates) {
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchTemplates = searchTemplates;
+    }
+
+    public List<MemberTeamRecord> search(MemberSearchCondition condition) {
+        // MemberRepositoryImpl.search 와 같은 조건의 SQL
+        MemberSearchTemplates.SqlSearch sql = searchTemplates.toSql(condition);
+        if (sql == null) {
+            return List.of();
+        }
+        // JDBC 로 직접 읽으므로 영속성 컨텍스트에 쌓인 변경을 먼저 반영한다
+        em.flush();
+        return jdbcTemplate.query(sql.sql(), sql.params(), ROW_MAPPER);
+    }
+}
@@ -1,14 +1,23 @@
 package com.seungh1024.repository;
 
+import com.seungh1024.dto.CursorSlice;
 import com.seungh1024.dto.MemberSearchCondition;
 import com.seungh1024.dto.MemberTeamDto;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
     Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable);
+    Stream<MemberTeamDto> streamSearch(MemberSearchCondition condition);
+    CursorSlice<MemberTeamDto> searchSlice(MemberSearchCondition condition, String cursor, int size);
+    CompletableFuture<List<MemberTeamDto>> searchAsync(MemberSearchCondition condition);
+    Flow.Publisher<MemberTeamDto> searchPublisher(MemberSearchCondition condition);
+    List<List<MemberTeamDto>> batchSearch(List<MemberSearchCondition> conditions);
 //    Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
 }
@@ -1,37 +1,110 @@
 package com.seungh1024.repository;
 
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.OrderSpecifier;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUtil;
+import com.seungh1024.dto.CursorSlice;
+import com.seungh1024.dto.MemberCursor;
 import com.seungh1024.dto.MemberSearchCondition;
 import com.seungh1024.dto.MemberTeamDto;
 import com.seungh1024.dto.QMemberTeamDto;
+import com.seungh1024.dto.UsernameMatch;
 import com.seungh1024.entity.Member;
 import com.seungh1024.entity.QMember;
 import com.seungh1024.entity.QTeam;
+import com.seungh1024.monitor.RepositoryMetricsAspect;
+import com.seungh1024.repository.support.CountQueries;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.Query;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 import static com.seungh1024.entity.QMember.member;
 import static com.seungh1024.entity.QTeam.team;
 
+@Transactional(readOnly = true)
 public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom{
+    private static final Duration PUBLISH_TIMEOUT = Duration.ofSeconds(30);
+    private static final int MAX_BATCH_CONDITIONS = 100;
+
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberCountCache countCache;
+    private final MemberSearchTemplates searchTemplates;
+    private final TeamIdCache teamIdCache;
+    private final UsernameTrigramIndex usernameIndex;
+    private final MeterRegistry meterRegistry;
+    private final boolean estimateUnfilteredCount;
+    private final int streamFetchSize;
+    private final Executor searchExecutor;
+    private final Executor searchPublisherExecutor;
+    private final TransactionTemplate readOnlyTransaction;
 
-    public MemberRepositoryImpl(EntityManager em){
+    public MemberRepositoryImpl(EntityManager em, MemberCountCache countCache, MemberSearchTemplates searchTemplates,
+                                TeamIdCache teamIdCache, UsernameTrigramIndex usernameIndex, MeterRegistry meterRegistry,
+                                @Value("${member.count.estimate-unfiltered:false}") boolean estimateUnfilteredCount,
+                                @Value("${member.stream.fetch-size:1000}") int streamFetchSize,
+                                @Qualifier("searchExecutor") Executor searchExecutor,
+                                @Qualifier("searchPublisherExecutor") Executor searchPublisherExecutor,
+                                PlatformTransactionManager transactionManager){
         super(Member.class);
+        this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.countCache = countCache;
+        this.searchTemplates = searchTemplates;
+        this.teamIdCache = teamIdCache;
+        this.usernameIndex = usernameIndex;
+        this.meterRegistry = meterRegistry;
+        this.estimateUnfilteredCount = estimateUnfilteredCount;
+        this.streamFetchSize = streamFetchSize;
+        this.searchExecutor = searchExecutor;
+        this.searchPublisherExecutor = searchPublisherExecutor;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
 //    public MemberRepositoryImpl(Class<?> domainClass) {
@@ -56,6 +129,18 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 //                ))
 //                .fetch();
 //        return result;
+        // 조건 조합별로 캐시해 둔 JPQL 에 값만 바인딩한다
+        return searchTemplates.search(em, condition);
+    }
+
+    /**
+     * 결과를 한 번에 List 로 올리지 않고 forward-only 커서로 한 줄씩 읽는다.
+     * 트랜잭션 안에서 호출하고 사용 후 반드시 close 해야 한다.
+     * 메서드가 끝날 때 트랜잭션이 닫히면 커서도 닫히므로 새 트랜잭션을 열지 않고 호출한 쪽 트랜잭션을 따른다.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public Stream<MemberTeamDto> streamSearch(MemberSearchCondition condition) {
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
@@ -67,18 +152,21 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameMatches(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
-                .fetch();
+                .setHint(HibernateHints.HINT_FETCH_SIZE, streamFetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .stream();
     }
 
     @Override
     public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        String conditionTag = RepositoryMetricsAspect.conditionTag(condition);
 
-        List<MemberTeamDto> results = queryFactory
+        List<MemberTeamDto> results = queryTimer("searchPage", "content", conditionTag).record(() -> queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -89,14 +177,15 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameMatches(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
                 )
+                .orderBy(MemberSorts.POLICY.toOrderSpecifiers(pageable.getSort(), meterRegistry, "MemberRepository"))
                 .offset(pageable.getOffset())
                 .limit(pageable.getPageSize())
-                .fetch();
+                .fetch());
 
 
 //        long total = queryFactory
@@ -111,28 +200,276 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 //                )
 //                .fetchOne();
 
-        JPAQuery<Long> countQuery = queryFactory
+        JPAQuery<Long> countQuery = CountQueries.pruneJoins(queryFactory, queryFactory
                 .select(member.count())
                 .from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameMatches(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                );
+                ));
 
 
-        return PageableExecutionUtils.getPage(results,pageable, () ->countQuery.fetchOne());
+        return PageableExecutionUtils.getPage(results,pageable, () -> countCache.getOrLoad(condition, () -> {
+            if (estimateUnfilteredCount && MemberCountCache.isUnfiltered(condition)) {
+                Long estimated = estimatedMemberCount();
+                if (estimated != null) {
+                    return estimated;
+                }
+            }
+            return queryTimer("searchPage", "count", conditionTag).record(countQuery::fetchOne);
+        }));
 //        return new PageImpl<>(results,pageable,total);
     }
 
+    /**
+     * offset 대신 마지막으로 읽은 위치 이후를 바로 찾아가는 keyset 페이징.
+     * 나이 조건이 있으면 (age, member_id), 없으면 (member_id) 순으로 정렬하고 그 위치를 커서로 넘긴다.
+     */
+    @Override
+    public CursorSlice<MemberTeamDto> searchSlice(MemberSearchCondition condition, String cursor, int size) {
+        MemberCursor after = cursor != null ? MemberCursor.decode(cursor) : null;
+        boolean ageOrdered = after != null
+                ? after.isAgeOrdered()
+                : condition.getAgeGoe() != null || condition.getAgeLoe() != null;
+
+        List<MemberTeamDto> results = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(
+                        usernameMatches(condition),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()),
+                        seekAfter(after)
+                )
+                .orderBy(ageOrdered
+                        ? new OrderSpecifier[]{member.age.asc(), member.id.asc()}
+                        : new OrderSpecifier[]{member.id.asc()})
+                .limit(size + 1)
+                .fetch();
+
+        if (results.size() <= size) {
+            return new CursorSlice<>(results, null);
+        }
+        List<MemberTeamDto> content = results.subList(0, size);
+        MemberTeamDto last = content.get(size - 1);
+        MemberCursor next = ageOrdered
+                ? MemberCursor.ofAge(last.getAge(), last.getMemberId())
+                : MemberCursor.ofId(last.getMemberId());
+        return new CursorSlice<>(content, next.encode());
+    }
+
+    /**
+     * searchExecutor 에서 search 를 실행한다. 실행 스레드에서 새 readOnly 트랜잭션으로 조회한다.
+     * 실행기 큐가 차면 호출 시점에 TaskRejectedException 이 난다. condition 은 호출 후 바꾸면 안 된다.
+     */
+    @Override
+    @Async("searchExecutor")
+    public CompletableFuture<List<MemberTeamDto>> searchAsync(MemberSearchCondition condition) {
+        return CompletableFuture.completedFuture(search(condition));
+    }
+
+    /**
+     * 구독할 때마다 searchExecutor 에서 streamSearch 커서를 열고 구독자가 요청(request)한 만큼만 내보낸다.
+     * 구독자 버퍼가 차면 조회 스레드가 기다리고, PUBLISH_TIMEOUT 동안 요청이 없거나 구독을 취소하면 커서를 닫는다.
+     * 구독자에게는 searchPublisherExecutor 스레드에서 전달한다. 조회 트랜잭션은 publish 안에서 따로 연다.
+     */
+    @Override
+    public Flow.Publisher<MemberTeamDto> searchPublisher(MemberSearchCondition condition) {
+        return subscriber -> {
+            SubmissionPublisher<MemberTeamDto> publisher = new SubmissionPublisher<>(searchPublisherExecutor, Flow.defaultBufferSize());
+            publisher.subscribe(subscriber);
+            try {
+                searchExecutor.execute(() -> publish(condition, publisher));
+            } catch (RejectedExecutionException e) {
+                publisher.closeExceptionally(e);
+            }
+        };
+    }
+
+    private void publish(MemberSearchCondition condition, SubmissionPublisher<MemberTeamDto> publisher) {
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<MemberTeamDto> rows = streamSearch(condition)) {
+                    Iterator<MemberTeamDto> iterator = rows.iterator();
+                    while (iterator.hasNext() && publisher.hasSubscribers()) {
+                        int lag = publisher.offer(iterator.next(), PUBLISH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS,
+                                (dropped, row) -> false);
+                        if (lag < 0) {
+                            throw new IllegalStateException("Subscriber did not request rows within " + PUBLISH_TIMEOUT);
+                        }
+                    }
+                }
+            });
+            publisher.close();
+        } catch (RuntimeException e) {
+            publisher.closeExceptionally(e);
+        }
+    }
+
+    /**
+     * 여러 검색 조건을 SQL 한 번으로 조회하고 조건별로 나눠서 돌려준다. (결과 순서 = 조건 순서)
+     * username/나이가 같고 팀만 다른 조건은 team_id in (...) 하나로, 팀/나이가 같고 username 만 다른 조건은 username in (...) 하나로 합치고
+     * 나머지 묶음은 union all 로 잇는다. 한 row 가 여러 조건에 맞으면 각 결과에 모두 들어간다.
+     * 조건이 하나도 없는 검색은 전체 조회가 되므로 받지 않는다.
+     */
+    @Override
+    public List<List<MemberTeamDto>> batchSearch(List<MemberSearchCondition> conditions) {
+        if (conditions.size() > MAX_BATCH_CONDITIONS) {
+            throw new IllegalArgumentException("Too many conditions: " + conditions.size() + " (max " + MAX_BATCH_CONDITIONS + ")");
+        }
+        List<BatchCondition> resolved = conditions.stream().map(this::resolve).toList();
+
+        Map<List<Object>, BatchCondition> byTeam = new LinkedHashMap<>();
+        for (BatchCondition condition : resolved) {
+            if (!condition.matchesNothing()) {
+                byTeam.merge(Arrays.asList(condition.usernames(), condition.pattern(), condition.ageGoe(), condition.ageLoe()),
+                        condition, BatchCondition::mergeTeams);
+            }
+        }
+        Map<List<Object>, BatchCondition> merged = new LinkedHashMap<>();
+        for (BatchCondition condition : byTeam.values()) {
+            merged.merge(Arrays.asList(condition.teamIds(), condition.pattern(), condition.ageGoe(), condition.ageLoe()),
+                    condition, BatchCondition::mergeUsernames);
+        }
+
+        List<MemberTeamDto> rows = new ArrayList<>();
+        if (!merged.isEmpty()) {
+            // 묶음마다 자기 조건의 인덱스를 타도록 or 대신 union all 로 잇는다 (Hibernate 6 HQL)
+            JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+            QMemberTeamDto projection = new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name);
+            boolean first = true;
+            for (BatchCondition condition : merged.values()) {
+                if (!first) {
+                    serializer.append(" union all ");
+                }
+                first = false;
+                serializer.serialize(queryFactory
+                        .select(projection)
+                        .from(member)
+                        .leftJoin(member.team, team)
+                        .where(condition.toPredicate(this::usernameMatches))
+                        .getMetadata(), false, null);
+            }
+            Query query = em.createQuery(serializer.toString());
+            JPAUtil.setConstants(query, serializer.getConstants(), Map.of());
+            // 여러 묶음에 맞는 row 는 한 번만 남기고 id 순으로 정렬한다
+            Map<Long, MemberTeamDto> byId = new TreeMap<>();
+            for (Object row : query.getResultList()) {
+                MemberTeamDto dto = projection.newInstance((Object[]) row);
+                byId.putIfAbsent(dto.getMemberId(), dto);
+            }
+            rows.addAll(byId.values());
+        }
+
+        List<List<MemberTeamDto>> results = new ArrayList<>(resolved.size());
+        for (BatchCondition condition : resolved) {
+            results.add(rows.stream().filter(condition::matches).toList());
+        }
+        return results;
+    }
+
+    private BatchCondition resolve(MemberSearchCondition condition) {
+        // 불변 Set 은 contains(null) 에서 예외가 나므로 HashSet 을 쓴다 (팀 없는 member 는 teamId 가 null)
+        // 정확히 일치하는 username 만 in (...) 으로 합치고, prefix/contains 등은 패턴 그대로 둔다
+        boolean hasUsername = StringUtils.hasText(condition.getUsername());
+        UsernameMatch match = condition.usernameMatchOrDefault();
+        Set<String> usernames = hasUsername && match == UsernameMatch.EXACT
+                ? new HashSet<>(List.of(condition.getUsername()))
+                : null;
+        UsernamePattern pattern = hasUsername && match != UsernameMatch.EXACT
+                ? new UsernamePattern(match, condition.getUsername())
+                : null;
+        Set<Long> teamIds = StringUtils.hasText(condition.getTeamName())
+                ? new HashSet<>(teamIdCache.findIdsByName(condition.getTeamName()))
+                : null;
+        if (usernames == null && pattern == null && teamIds == null
+                && condition.getAgeGoe() == null && condition.getAgeLoe() == null) {
+            throw new IllegalArgumentException("Batch search condition needs at least one filter");
+        }
+        return new BatchCondition(usernames, pattern, teamIds, condition.getAgeGoe(), condition.getAgeLoe());
+    }
+
+    /**
+     * usernames, pattern, teamIds 가 null 이면 조건 없음.
+     */
+    private record BatchCondition(Set<String> usernames, UsernamePattern pattern, Set<Long> teamIds, Integer ageGoe,
+                                  Integer ageLoe) {
+        boolean matchesNothing() {
+            return teamIds != null && teamIds.isEmpty();
+        }
+
+        BatchCondition mergeTeams(BatchCondition other) {
+            return new BatchCondition(usernames, pattern, union(teamIds, other.teamIds), ageGoe, ageLoe);
+        }
+
+        BatchCondition mergeUsernames(BatchCondition other) {
+            return new BatchCondition(union(usernames, other.usernames), pattern, teamIds, ageGoe, ageLoe);
+        }
+
+        Predicate toPredicate(BiFunction<UsernameMatch, String, Predicate> usernameMatches) {
+            BooleanBuilder builder = new BooleanBuilder();
+            if (usernames != null) {
+                builder.and(member.username.in(usernames));
+            }
+            if (pattern != null) {
+                builder.and(usernameMatches.apply(pattern.match(), pattern.value()));
+            }
+            if (teamIds != null) {
+                builder.and(MemberSearchPredicates.teamIdIn(Expressions.constant(teamIds)));
+            }
+            if (ageGoe != null) {
+                builder.and(MemberSearchPredicates.ageGoe(Expressions.constant(ageGoe)));
+            }
+            if (ageLoe != null) {
+                builder.and(MemberSearchPredicates.ageLoe(Expressions.constant(ageLoe)));
+            }
+            return builder.getValue();
+        }
+
+        boolean matches(MemberTeamDto row) {
+            return (usernames == null || usernames.stream()
+                    .anyMatch(username -> UsernamePatterns.matches(UsernameMatch.EXACT, username, row.getUsername())))
+                    && (pattern == null || UsernamePatterns.matches(pattern.match(), pattern.value(), row.getUsername()))
+                    && (teamIds == null || teamIds.contains(row.getTeamId()))
+                    && (ageGoe == null || row.getAge() >= ageGoe)
+                    && (ageLoe == null || row.getAge() <= ageLoe);
+        }
+
+        // 한쪽이라도 조건이 없으면 합친 결과도 조건 없음
+        private static <T> Set<T> union(Set<T> left, Set<T> right) {
+            if (left == null || right == null) {
+                return null;
+            }
+            Set<T> union = new HashSet<>(left);
+            union.addAll(right);
+            return union;
+        }
+    }
+
+    private record UsernamePattern(UsernameMatch match, String value) {
+    }
+
     public void searchPage2(MemberSearchCondition condition, Pageable pageable) {
+        searchPage2Query(condition, pageable).fetch();
+    }
 
+    // searchPage2 가 실행하는 쿼리. 벤치마크가 조립/직렬화 비용만 잴 때도 쓴다
+    public JPQLQuery<MemberTeamDto> searchPage2Query(MemberSearchCondition condition, Pageable pageable) {
         JPQLQuery<MemberTeamDto> jpaQuery = from(member)
                 .leftJoin(member.team, team)
                 .where(
-                        usernameEq(condition.getUsername()),
+                        usernameMatches(condition),
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
@@ -144,25 +481,85 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
                         team.id.as("teamId"),
                         team.name.as("teamName")
                 ));
-        JPQLQuery<MemberTeamDto> query = getQuerydsl().applyPagination(pageable, jpaQuery);
-        query.fetch();
+        return getQuerydsl().applyPagination(pageable, jpaQuery);
     }
 
 
-    private BooleanExpression usernameEq(String username) {
-        return StringUtils.hasText(username) ? member.username.eq(username) : null;
+    // searchPage 의 content 쿼리와 count 쿼리 시간을 나눠서 본다
+    private Timer queryTimer(String method, String part, String conditionTag) {
+        return Timer.builder("repository.query")
+                .tag("method", method)
+                .tag("part", part)
+                .tag("condition", conditionTag)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    // 조건이 없을 때는 정확한 count 대신 MySQL 테이블 통계의 추정 row 수를 쓴다
+    private Long estimatedMemberCount() {
+        try {
+            Object rows = em.createNativeQuery(
+                            "select table_rows from information_schema.tables" +
+                                    " where table_schema = database() and table_name = 'member'")
+                    .getSingleResult();
+            return rows != null ? ((Number) rows).longValue() : null;
+        } catch (PersistenceException e) {
+            return null;
+        }
+    }
+
+    private BooleanExpression seekAfter(MemberCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        if (!cursor.isAgeOrdered()) {
+            return member.id.gt(cursor.getMemberId());
+        }
+        return member.age.gt(cursor.getAge())
+                .or(member.age.eq(cursor.getAge()).and(member.id.gt(cursor.getMemberId())));
+    }
+
+    private BooleanExpression usernameMatches(MemberSearchCondition condition) {
+        return StringUtils.hasText(condition.getUsername())
+                ? usernameMatches(condition.usernameMatchOrDefault(), condition.getUsername())
+                : null;
+    }
+
+    /**
+     * 조건식은 MemberSearchPredicates (MemberSearchTemplates 와 같은 규칙)
+     * CONTAINS: trigram 인덱스의 후보 id 로 좁힌 뒤 like '%값%' 로 확인. 후보로 좁힐 수 없으면 like 만 쓴다
+     */
+    private BooleanExpression usernameMatches(UsernameMatch match, String username) {
+        BooleanExpression matches = MemberSearchPredicates.username(match,
+                Expressions.constant(MemberSearchPredicates.usernameValue(match, username)));
+        if (match != UsernameMatch.CONTAINS) {
+            return matches;
+        }
+        List<Long> candidates = usernameIndex.candidates(username);
+        if (candidates == null) {
+            return matches;
+        }
+        return candidates.isEmpty()
+                ? Expressions.FALSE.isTrue()
+                : matches.and(MemberSearchPredicates.idIn(Expressions.constant(candidates)));
     }
 
     private BooleanExpression teamNameEq(String teamName) {
-        return StringUtils.hasText(teamName) ? member.team.name.eq(teamName): null;
+        if (!StringUtils.hasText(teamName)) {
+            return null;
+        }
+        List<Long> teamIds = teamIdCache.findIdsByName(teamName);
+        return teamIds.isEmpty()
+                ? Expressions.FALSE.isTrue()
+                : MemberSearchPredicates.teamIdIn(Expressions.constant(teamIds));
     }
 
     private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
+        return ageGoe != null ? MemberSearchPredicates.ageGoe(Expressions.constant(ageGoe)) : null;
     }
 
     private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+        return ageLoe != null ? MemberSearchPredicates.ageLoe(Expressions.constant(ageLoe)) : null;
     }
 
 }
@@ -0,0 +1,63 @@
+package com.seungh1024.repository;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.seungh1024.dto.UsernameMatch;
+
+import java.util.Locale;
+
+import static com.seungh1024.entity.QMember.member;
+
+/**
+ * member 검색 조건(MemberSearchCondition)의 where 절 조각.
+ * 값 자리는 Expression 이라 MemberRepositoryImpl 은 실제 값(constant)을, MemberSearchTemplates 는 템플릿용 Param 을 넣는다.
+ * 그래서 모양별 JPQL/SQL 템플릿과 Querydsl 로 바로 만드는 쿼리가 같은 조건을 쓴다.
+ */
+final class MemberSearchPredicates {
+    private MemberSearchPredicates() {
+    }
+
+    /**
+     * EXACT: =
+     * IGNORE_CASE: lower(username) 대신 가상 컬럼 username_lower 와 비교해서 인덱스를 탄다
+     * PREFIX, CONTAINS: like (값은 usernameValue 로 만든 패턴)
+     */
+    static BooleanExpression username(UsernameMatch match, Expression<String> value) {
+        return switch (match) {
+            case PREFIX, CONTAINS -> member.username.like(value, UsernamePatterns.ESCAPE);
+            case IGNORE_CASE -> member.usernameLower.eq(value);
+            default -> member.username.eq(value);
+        };
+    }
+
+    /**
+     * username 에 바인딩할 값. PREFIX/CONTAINS 는 like 패턴, IGNORE_CASE 는 소문자로 바꾼 값.
+     */
+    static String usernameValue(UsernameMatch match, String username) {
+        return switch (match) {
+            case PREFIX, CONTAINS -> UsernamePatterns.like(match, username);
+            case IGNORE_CASE -> username.toLowerCase(Locale.ROOT);
+            default -> username;
+        };
+    }
+
+    // contains 검색에서 trigram 인덱스로 좁힌 후보 id
+    static BooleanExpression idIn(Expression<?> ids) {
+        return Expressions.booleanOperation(Ops.IN, member.id, ids);
+    }
+
+    // 팀 이름을 캐시된 팀 id 로 바꿔서 team join 없이 member.team_id 로 거른다
+    static BooleanExpression teamIdIn(Expression<?> teamIds) {
+        return Expressions.booleanOperation(Ops.IN, member.team.id, teamIds);
+    }
+
+    static BooleanExpression ageGoe(Expression<Integer> ageGoe) {
+        return member.age.goe(ageGoe);
+    }
+
+    static BooleanExpression ageLoe(Expression<Integer> ageLoe) {
+        return member.age.loe(ageLoe);
+    }
+}
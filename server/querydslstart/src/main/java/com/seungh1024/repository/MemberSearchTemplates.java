@@ -0,0 +1,231 @@
+package com.seungh1024.repository;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.HQLTemplates;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUtil;
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.dto.MemberTeamDto;
+import com.seungh1024.dto.QMemberTeamDto;
+import com.seungh1024.dto.UsernameMatch;
+import com.seungh1024.repository.support.SqlPredicateSerializer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.seungh1024.entity.QMember.member;
+import static com.seungh1024.entity.QTeam.team;
+
+/**
+ * search 조건은 4개 필드의 유무 조합(16가지)과 username 검색 방식, contains 후보 id 유무로만 쿼리 모양이 달라진다.
+ * 모양별 쿼리를 한 번만 만들어 두고 같은 문자열을 재사용해서 Querydsl 직렬화와 Hibernate 파싱(쿼리 플랜 캐시 히트)을 건너뛴다.
+ * <p>
+ * 조건은 MemberRepositoryImpl 과 같은 MemberSearchPredicates 에 값 대신 Param 을 넣어 만든다.
+ * 같은 조건식을 JPQL(search)과 JDBC 용 SQL(toSql: MemberRecordRepository, IndexAdvisor)로 직렬화하므로 규칙이 한 곳에만 있다.
+ */
+@Component
+public class MemberSearchTemplates {
+    private static final int USERNAME = 1;
+    private static final int TEAM_NAME = 1 << 1;
+    private static final int AGE_GOE = 1 << 2;
+    private static final int AGE_LOE = 1 << 3;
+    private static final int USERNAME_IDS = 1 << 4;
+    // username 조건이 있을 때만 검색 방식(UsernameMatch 순서)을 위쪽 비트에 넣는다
+    private static final int MATCH_SHIFT = 5;
+
+    private static final QMemberTeamDto PROJECTION =
+            new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name);
+    // PROJECTION 과 같은 컬럼 순서
+    private static final String SQL_SELECT = "select m.member_id, m.username, m.age, t.id, t.name" +
+            " from member m left join team t on t.id = m.team_id";
+    private static final Map<Path<?>, String> SQL_ALIASES = Map.of(member, "m", team, "t");
+
+    private static final Param<String> USERNAME_PARAM = new Param<>(String.class, "username");
+    @SuppressWarnings("rawtypes")
+    private static final Param<Collection> USERNAME_IDS_PARAM = new Param<>(Collection.class, "usernameIds");
+    @SuppressWarnings("rawtypes")
+    private static final Param<Collection> TEAM_IDS_PARAM = new Param<>(Collection.class, "teamIds");
+    private static final Param<Integer> AGE_GOE_PARAM = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> AGE_LOE_PARAM = new Param<>(Integer.class, "ageLoe");
+
+    private final TeamIdCache teamIdCache;
+    private final UsernameTrigramIndex usernameIndex;
+    private final AtomicReferenceArray<Template> templates =
+            new AtomicReferenceArray<>(UsernameMatch.values().length << MATCH_SHIFT);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MemberSearchTemplates(TeamIdCache teamIdCache, UsernameTrigramIndex usernameIndex) {
+        this.teamIdCache = teamIdCache;
+        this.usernameIndex = usernameIndex;
+    }
+
+    public List<MemberTeamDto> search(EntityManager em, MemberSearchCondition condition) {
+        Bound bound = bind(condition);
+        if (bound == null) {
+            return List.of();
+        }
+        Query query = em.createQuery(bound.template().jpql());
+        JPAUtil.setConstants(query, bound.template().jpqlConstants(), bound.values());
+        List<?> rows = query.getResultList();
+        List<MemberTeamDto> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            result.add(PROJECTION.newInstance((Object[]) row));
+        }
+        return result;
+    }
+
+    /**
+     * search 가 실행하는 JPQL. 결과가 없는 게 확실하면 null. (벤치마크가 조립 비용만 잴 때 쓴다)
+     */
+    public String jpql(MemberSearchCondition condition) {
+        Bound bound = bind(condition);
+        return bound != null ? bound.template().jpql() : null;
+    }
+
+    /**
+     * search 와 같은 조건의 SQL (NamedParameterJdbcTemplate 용). 결과가 없는 게 확실하면(팀 이름, contains 후보가 없음) null.
+     */
+    public SqlSearch toSql(MemberSearchCondition condition) {
+        Bound bound = bind(condition);
+        return bound != null ? bound.toSql() : null;
+    }
+
+    /**
+     * 팀 이름과 contains 후보를 조회하지 않고 주어진 id 로 SQL 을 만든다. (IndexAdvisor 의 EXPLAIN 용)
+     * teamIds 가 있으면 condition 의 teamName 대신 쓰고, usernameIds 는 CONTAINS 검색일 때만 쓴다.
+     */
+    public SqlSearch toSql(MemberSearchCondition condition, List<Long> teamIds, List<Long> usernameIds) {
+        return bind(condition, teamIds, usernameIds).toSql();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Bound bind(MemberSearchCondition condition) {
+        List<Long> usernameIds = null;
+        if (StringUtils.hasText(condition.getUsername()) && condition.usernameMatchOrDefault() == UsernameMatch.CONTAINS) {
+            usernameIds = usernameIndex.candidates(condition.getUsername());
+            if (usernameIds != null && usernameIds.isEmpty()) {
+                return null;
+            }
+        }
+        List<Long> teamIds = null;
+        if (StringUtils.hasText(condition.getTeamName())) {
+            teamIds = teamIdCache.findIdsByName(condition.getTeamName());
+            if (teamIds.isEmpty()) {
+                return null;
+            }
+        }
+        return bind(condition, teamIds, usernameIds);
+    }
+
+    private Bound bind(MemberSearchCondition condition, List<Long> teamIds, List<Long> usernameIds) {
+        int shape = 0;
+        Map<ParamExpression<?>, Object> values = new HashMap<>();
+        if (StringUtils.hasText(condition.getUsername())) {
+            UsernameMatch match = condition.usernameMatchOrDefault();
+            shape |= USERNAME | match.ordinal() << MATCH_SHIFT;
+            values.put(USERNAME_PARAM, MemberSearchPredicates.usernameValue(match, condition.getUsername()));
+            if (match == UsernameMatch.CONTAINS && usernameIds != null) {
+                shape |= USERNAME_IDS;
+                values.put(USERNAME_IDS_PARAM, usernameIds);
+            }
+        }
+        if (teamIds != null) {
+            shape |= TEAM_NAME;
+            values.put(TEAM_IDS_PARAM, teamIds);
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= AGE_GOE;
+            values.put(AGE_GOE_PARAM, condition.getAgeGoe());
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= AGE_LOE;
+            values.put(AGE_LOE_PARAM, condition.getAgeLoe());
+        }
+        return new Bound(template(shape), values);
+    }
+
+    private Template template(int shape) {
+        Template template = templates.get(shape);
+        if (template == null) {
+            misses.increment();
+            template = render(shape);
+            templates.compareAndSet(shape, null, template);
+        } else {
+            hits.increment();
+        }
+        return template;
+    }
+
+    private static Template render(int shape) {
+        BooleanBuilder where = new BooleanBuilder();
+        if ((shape & USERNAME) != 0) {
+            where.and(MemberSearchPredicates.username(UsernameMatch.values()[shape >>> MATCH_SHIFT], USERNAME_PARAM));
+        }
+        if ((shape & USERNAME_IDS) != 0) {
+            where.and(MemberSearchPredicates.idIn(USERNAME_IDS_PARAM));
+        }
+        if ((shape & TEAM_NAME) != 0) {
+            where.and(MemberSearchPredicates.teamIdIn(TEAM_IDS_PARAM));
+        }
+        if ((shape & AGE_GOE) != 0) {
+            where.and(MemberSearchPredicates.ageGoe(AGE_GOE_PARAM));
+        }
+        if ((shape & AGE_LOE) != 0) {
+            where.and(MemberSearchPredicates.ageLoe(AGE_LOE_PARAM));
+        }
+
+        JPAQuery<MemberTeamDto> query = new JPAQuery<Void>()
+                .select(PROJECTION)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(where);
+        JPQLSerializer jpql = new JPQLSerializer(HQLTemplates.DEFAULT);
+        jpql.serialize(query.getMetadata(), false, null);
+
+        if (!where.hasValue()) {
+            return new Template(jpql.toString(), List.copyOf(jpql.getConstants()), SQL_SELECT, Map.of());
+        }
+        SqlPredicateSerializer sql = new SqlPredicateSerializer(SQL_ALIASES);
+        sql.handle(where.getValue());
+        return new Template(jpql.toString(), List.copyOf(jpql.getConstants()), SQL_SELECT + " where " + sql,
+                sql.getConstantValues());
+    }
+
+    /**
+     * search 결과와 같은 조건의 SQL 과 이름 붙은 파라미터.
+     */
+    public record SqlSearch(String sql, Map<String, Object> params) {
+    }
+
+    private record Template(String jpql, List<Object> jpqlConstants, String sql, Map<String, Object> sqlConstants) {
+    }
+
+    private record Bound(Template template, Map<ParamExpression<?>, Object> values) {
+        SqlSearch toSql() {
+            Map<String, Object> params = new HashMap<>(template.sqlConstants());
+            values.forEach((param, value) -> params.put(param.getName(), value));
+            return new SqlSearch(template.sql(), params);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.repository.support.SortPolicy;
+
+import static com.seungh1024.entity.QMember.member;
+
+/**
+ * Member 검색에서 클라이언트가 고를 수 있는 정렬. 뒤에 붙는 id 까지 인덱스 순서로 읽을 수 있는 컬럼만 연다.
+ * (InnoDB 보조 인덱스는 PK 를 뒤에 달고 있어서 idx_member_age 는 (age, member_id) 순서다.
+ * username 은 idx_member_username_age 의 (username, age, member_id) 순서라서 username, id 정렬에 filesort 가 생기므로 열지 않는다)
+ */
+final class MemberSorts {
+    static final SortPolicy POLICY = SortPolicy.builder(member.id)
+            .allow("id", member.id)
+            .allow("age", member.age)
+            .build();
+
+    private MemberSorts() {
+    }
+}
@@ -1,5 +1,6 @@
 package com.seungh1024.repository;
 
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.seungh1024.dto.MemberSearchCondition;
@@ -7,8 +8,12 @@ import com.seungh1024.entity.Member;
 import com.seungh1024.entity.QMember;
 import com.seungh1024.entity.QTeam;
 import com.seungh1024.repository.support.Querydsl4RepositorySupport;
+import com.seungh1024.repository.support.SortPolicy;
+import com.seungh1024.repository.support.SqlFunctionRegistry;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.util.List;
@@ -16,11 +21,23 @@ import java.util.List;
 import static com.seungh1024.entity.QMember.member;
 import static com.seungh1024.entity.QTeam.team;
 
+@Repository
+@Transactional(readOnly = true)
 public class MemberTestRepository extends Querydsl4RepositorySupport {
     public MemberTestRepository() {
         super(Member.class);
     }
 
+    @Override
+    protected SortPolicy getSortPolicy() {
+        return MemberSorts.POLICY;
+    }
+
+    @Override
+    protected SqlFunctionRegistry getFunctionRegistry() {
+        return MemberFunctions.REGISTRY;
+    }
+
     public List<Member> basicSelect(){
         return select(member)
                 .from(member)
@@ -44,6 +61,14 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
         );
     }
 
+    // 호출하는 쪽이 만든 조건. lower(username) 같은 조건은 getFunctionRegistry 규칙으로 바뀐 뒤 실행된다
+    public Page<Member> applyPagination(Predicate predicate, Pageable pageable){
+        return applyPagination(pageable, query -> query
+                .selectFrom(member)
+                .where(predicate)
+        );
+    }
+
     public Page<Member> applyPagination2(MemberSearchCondition condition, Pageable pageable){
         return applyPagination(pageable, contentQuery -> contentQuery
                 .selectFrom(member)
@@ -64,6 +89,26 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
         );
     }
 
+    public Page<Member> applyPaginationParallel(MemberSearchCondition condition, Pageable pageable){
+        return applyPaginationInParallel(pageable, contentQuery -> contentQuery
+                .selectFrom(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                ), countQuery -> countQuery
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                )
+        );
+    }
+
     private BooleanExpression usernameEq(String username) {
         return StringUtils.hasText(username) ? member.username.eq(username) : null;
     }
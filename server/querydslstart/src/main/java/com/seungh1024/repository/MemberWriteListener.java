@@ -0,0 +1,117 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.entity.Member;
+import com.seungh1024.entity.Team;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PreDeleteEvent;
+import org.hibernate.event.spi.PreDeleteEventListener;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Member 엔티티의 insert/update/delete 를 실행하기 전에 소속 팀(팀을 옮기면 예전 팀까지)의 변화량을 TeamStatsRepository 에 남긴다.
+ * 여기서는 잠그지 않는다. 집계 row 는 커밋 직전에 팀 id 순으로 한꺼번에 잠그고 반영한다.
+ * insert 뒤에는 username 인덱스에 넣는다.
+ * 엔티티가 repository 를 알지 않도록 @EntityListeners 대신 Hibernate 이벤트 리스너로 등록한다.
+ * update/delete 는 이벤트의 이전 상태(oldState, deletedState)로 떠난 팀과 예전 나이를 찾는다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberWriteListener implements PreInsertEventListener, PreUpdateEventListener, PreDeleteEventListener,
+        PostInsertEventListener {
+    private final EntityManagerFactory entityManagerFactory;
+    private final TeamStatsRepository teamStatsRepository;
+    private final UsernameTrigramIndex usernameIndex;
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.PRE_INSERT, this);
+        registry.appendListeners(EventType.PRE_UPDATE, this);
+        registry.appendListeners(EventType.PRE_DELETE, this);
+        registry.appendListeners(EventType.POST_INSERT, this);
+    }
+
+    // 반환값 true 는 실행 취소(veto)이므로 항상 false
+    @Override
+    public boolean onPreInsert(PreInsertEvent event) {
+        if (event.getEntity() instanceof Member member) {
+            teamStatsRepository.added(teamId(member.getTeam()), member.getAge());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onPreUpdate(PreUpdateEvent event) {
+        if (event.getEntity() instanceof Member member) {
+            Object[] oldState = event.getOldState();
+            if (oldState == null) {
+                // 이전 상태를 모르면 변화량을 낼 수 없으므로 지금 팀을 다시 집계한다
+                Long teamId = teamId(member.getTeam());
+                if (teamId != null) {
+                    teamStatsRepository.markDirty(List.of(teamId));
+                }
+                return false;
+            }
+            Long oldTeamId = teamId((Team) oldState[propertyIndex(event.getPersister(), "team")]);
+            int oldAge = (Integer) oldState[propertyIndex(event.getPersister(), "age")];
+            Long newTeamId = teamId(member.getTeam());
+            if (!Objects.equals(oldTeamId, newTeamId) || oldAge != member.getAge()) {
+                teamStatsRepository.removed(oldTeamId, oldAge);
+                teamStatsRepository.added(newTeamId, member.getAge());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onPreDelete(PreDeleteEvent event) {
+        if (event.getEntity() instanceof Member member) {
+            Object[] state = event.getDeletedState();
+            if (state != null) {
+                teamStatsRepository.removed(teamId((Team) state[propertyIndex(event.getPersister(), "team")]),
+                        (Integer) state[propertyIndex(event.getPersister(), "age")]);
+            } else {
+                teamStatsRepository.removed(teamId(member.getTeam()), member.getAge());
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Member member) {
+            usernameIndex.index(member.getId(), member.getUsername());
+        }
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private static int propertyIndex(EntityPersister persister, String property) {
+        return persister.getEntityMetamodel().getPropertyIndex(property);
+    }
+
+    // 프록시여도 id 는 초기화 없이 꺼낼 수 있다
+    private static Long teamId(Team team) {
+        return team != null ? team.getId() : null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.repository.support.ReplicaReads;
+import com.seungh1024.repository.support.TableWriteInspector;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 팀 이름 -> 팀 id 캐시. 팀은 수가 적고 거의 바뀌지 않으므로 이름 조건을 member.team_id 조건으로 바꿔 team join 없이 검색한다.
+ * team 테이블에 쓰기가 일어나면 비우고, 커밋/롤백 이후에 한 번 더 비운다. 그 사이에 시작한 조회 결과와
+ * team 에 쓴 트랜잭션 안에서 읽은 결과(커밋 전 팀이 섞여 있다), replica 에서 읽은 결과(쓰기가 아직 안 왔을 수 있다)는 넣지 않는다.
+ * 쓰기 감지를 거치지 않은 변경도 TTL 이 지나면 다시 읽는다.
+ */
+@Component
+public class TeamIdCache {
+    private static final int MAX_SIZE = 10_000;
+
+    private final EntityManager em;
+    private final long ttlNanos;
+    private final Map<String, Entry> idsByName = new HashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public TeamIdCache(EntityManager em, TableWriteInspector tableWriteInspector,
+                       @Value("${team.id-cache.ttl:10m}") Duration ttl) {
+        this.em = em;
+        this.ttlNanos = ttl.toNanos();
+        tableWriteInspector.addListener("team", this::evictOnWrite);
+    }
+
+    public List<Long> findIdsByName(String name) {
+        long now = System.nanoTime();
+        synchronized (idsByName) {
+            Entry entry = idsByName.get(name);
+            if (entry != null && now - entry.loadedAt() < ttlNanos) {
+                return entry.ids();
+            }
+        }
+
+        // 커밋 전 스냅샷에서 읽은 목록이 비운 뒤에 들어가지 않도록 세대 번호를 비교한다
+        long loadedGeneration = generation.get();
+        List<Long> ids = em.createQuery("select t.id from Team t where t.name = :name", Long.class)
+                .setParameter("name", name)
+                .getResultList();
+        // 없는 이름까지 담아두면 임의의 요청값으로 캐시가 계속 커지므로 찾은 것만 보관한다
+        if (!ids.isEmpty() && !TransactionSynchronizationManager.hasResource(this)
+                && !ReplicaReads.isCurrentTransaction()) {
+            synchronized (idsByName) {
+                if (generation.get() == loadedGeneration) {
+                    if (idsByName.size() >= MAX_SIZE) {
+                        idsByName.clear();
+                    }
+                    idsByName.put(name, new Entry(List.copyOf(ids), now));
+                }
+            }
+        }
+        return ids;
+    }
+
+    public void evictAll() {
+        synchronized (idsByName) {
+            generation.incrementAndGet();
+            idsByName.clear();
+        }
+    }
+
+    private void evictOnWrite() {
+        evictAll();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        // 트랜잭션마다 한 번만 등록한다
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TeamIdCache.this);
+                evictAll();
+            }
+        });
+    }
+
+    private record Entry(List<Long> ids, long loadedAt) {
+    }
+}
@@ -0,0 +1,278 @@
+package com.seungh1024.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.seungh1024.dto.QTeamStatsDto;
+import com.seungh1024.dto.TeamStatsDto;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static com.seungh1024.entity.QTeam.team;
+import static com.seungh1024.entity.QTeamStats.teamStats;
+
+/**
+ * 팀별 집계(QuerydslBasicTest.aggregation/groupBy 의 count/sum/avg/min/max)를 team_stats 에 저장해 두고 팀 수만큼만 읽는다.
+ * <ul>
+ *     <li>Member 엔티티 변경(persist, changeTeam, changeAge, remove): MemberWriteListener 가 added, removed 를 호출한다</li>
+ *     <li>JDBC insert, Querydsl bulk update/delete: 쓰는 쪽이 직접 호출한다 (MemberBulkRepository, MemberBulkOperations).
+ *     그 밖의 bulk 쓰기 뒤에는 rebuildAll 을 호출한다</li>
+ * </ul>
+ * 트랜잭션 동안에는 팀별 변화량(수, 나이 합계, 넣고 뺀 나이의 최소/최대)만 모아 두고, 커밋 직전에 팀 id 순으로
+ * member_count = member_count + ?, age_sum = age_sum + ? 로 반영한다. 그래서 집계 row 는 커밋 직전에만 잠기고,
+ * 여러 팀을 쓰는 트랜잭션끼리도 잠그는 순서가 같다.
+ * min/max 는 뺀 나이가 저장된 값과 같을 때만 (team_id, age) 인덱스 범위를 다시 읽는다.
+ * markDirty 로 표시한 팀은 변화량 대신 member 에서 전부 다시 집계한다.
+ * <p>
+ * 처음 적용할 때는 rebuildAll 로 기존 member 를 한 번 집계해 두어야 한다.
+ */
+@Repository
+public class TeamStatsRepository {
+    // 없으면 만들고 있으면 그 row 를 잠근다. 두 트랜잭션이 같은 팀의 첫 member 를 넣어도 한쪽은 기다렸다가 update 로 끝난다
+    private static final String LOCK = "insert into team_stats (team_id, member_count, age_sum) values (?, 0, 0)"
+            + " on duplicate key update team_id = team_id";
+    // 잠근 뒤에 읽으므로 스냅샷이 아닌 최신 커밋 값이다
+    private static final String SELECT_BOUNDS = "select age_min, age_max from team_stats where team_id = ? for update";
+    private static final String APPLY = "update team_stats set member_count = member_count + ?, age_sum = age_sum + ?,"
+            + " age_min = ?, age_max = ? where team_id = ?";
+    private static final String REFRESH_BOUNDS = "update team_stats s set"
+            + " age_min = (select min(m.age) from member m where m.team_id = s.team_id),"
+            + " age_max = (select max(m.age) from member m where m.team_id = s.team_id)"
+            + " where s.team_id = ?";
+    private static final String REFRESH = "update team_stats s set"
+            + " member_count = (select count(*) from member m where m.team_id = s.team_id),"
+            + " age_sum = (select coalesce(sum(m.age), 0) from member m where m.team_id = s.team_id),"
+            + " age_min = (select min(m.age) from member m where m.team_id = s.team_id),"
+            + " age_max = (select max(m.age) from member m where m.team_id = s.team_id)"
+            + " where s.team_id = ?";
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+
+    public TeamStatsRepository(EntityManager em, PlatformTransactionManager transactionManager) {
+        this.em = em;
+        this.queryFactory = new JPAQueryFactory(em);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Transactional(readOnly = true)
+    public List<TeamStatsDto> findAll() {
+        return queryFactory
+                .select(new QTeamStatsDto(
+                        team.id,
+                        team.name,
+                        teamStats.memberCount,
+                        teamStats.ageSum,
+                        teamStats.ageMin,
+                        teamStats.ageMax
+                ))
+                .from(teamStats)
+                .join(team).on(team.id.eq(teamStats.teamId))
+                .orderBy(team.name.asc(), team.id.asc())
+                .fetch();
+    }
+
+    public void added(Long teamId, int age) {
+        added(teamId, 1, age, age, age);
+    }
+
+    public void removed(Long teamId, int age) {
+        removed(teamId, 1, age, age, age);
+    }
+
+    /**
+     * member count 명(나이 합계 ageSum, 최소 minAge, 최대 maxAge)이 팀에 들어왔다.
+     */
+    public void added(Long teamId, long count, long ageSum, Integer minAge, Integer maxAge) {
+        record(teamId, delta -> {
+            delta.count += count;
+            delta.ageSum += ageSum;
+            delta.addedMin = min(delta.addedMin, minAge);
+            delta.addedMax = max(delta.addedMax, maxAge);
+        });
+    }
+
+    /**
+     * member count 명(나이 합계 ageSum, 최소 minAge, 최대 maxAge)이 팀에서 빠졌다.
+     */
+    public void removed(Long teamId, long count, long ageSum, Integer minAge, Integer maxAge) {
+        record(teamId, delta -> {
+            delta.count -= count;
+            delta.ageSum -= ageSum;
+            delta.removedMin = min(delta.removedMin, minAge);
+            delta.removedMax = max(delta.removedMax, maxAge);
+        });
+    }
+
+    /**
+     * 변화량을 알 수 없는 쓰기(조건만 아는 bulk update 등) 뒤에 부른다. 커밋 직전에 member 에서 전부 다시 집계한다.
+     */
+    public void markDirty(Collection<Long> teamIds) {
+        teamIds.forEach(teamId -> record(teamId, delta -> delta.rebuild = true));
+    }
+
+    /**
+     * 모든 팀을 다시 집계한다. 처음 적용할 때, 또는 위 메서드를 거치지 않은 bulk 쓰기 뒤에 쓴다.
+     */
+    @Transactional
+    public void rebuildAll() {
+        Map<Long, Delta> deltas = new HashMap<>();
+        queryFactory.select(team.id).from(team).fetch().forEach(teamId -> deltas.put(teamId, Delta.rebuilding()));
+        apply(deltas);
+    }
+
+    /**
+     * 트랜잭션 안이면 커밋 직전에, 밖이면 바로 새 트랜잭션에서 반영한다.
+     * 커밋 직전 반영은 Hibernate 의 beforeTransactionCompletion 에서 한다. 커밋할 때의 flush 에서 생긴 변화량까지 포함하기 위해서다.
+     */
+    private void record(Long teamId, Consumer<Delta> change) {
+        if (teamId == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            Delta delta = new Delta();
+            change.accept(delta);
+            transactionTemplate.executeWithoutResult(status -> apply(Map.of(teamId, delta)));
+            return;
+        }
+        DirtyTeams dirtyTeams = (DirtyTeams) TransactionSynchronizationManager.getResource(this);
+        if (dirtyTeams == null) {
+            dirtyTeams = new DirtyTeams();
+            TransactionSynchronizationManager.bindResource(this, dirtyTeams);
+            TransactionSynchronizationManager.registerSynchronization(dirtyTeams);
+            em.unwrap(SessionImplementor.class).getActionQueue().registerProcess(dirtyTeams);
+        }
+        change.accept(dirtyTeams.deltas.computeIfAbsent(teamId, id -> new Delta()));
+    }
+
+    // flush 뒤(beforeTransactionCompletion)에 부르므로 JPA 쿼리 대신 같은 커넥션으로 직접 실행한다.
+    // 여러 팀을 잠글 때 트랜잭션끼리 순서가 엇갈리지 않게 id 순으로 실행한다
+    private void apply(Map<Long, Delta> deltas) {
+        Map<Long, Delta> sorted = new TreeMap<>(deltas);
+        em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement lock = connection.prepareStatement(LOCK);
+                 PreparedStatement selectBounds = connection.prepareStatement(SELECT_BOUNDS);
+                 PreparedStatement apply = connection.prepareStatement(APPLY)) {
+                for (Map.Entry<Long, Delta> entry : sorted.entrySet()) {
+                    Long teamId = entry.getKey();
+                    Delta delta = entry.getValue();
+                    lock.setLong(1, teamId);
+                    lock.executeUpdate();
+                    if (delta.rebuild) {
+                        execute(connection, REFRESH, teamId);
+                    } else {
+                        applyDelta(connection, selectBounds, apply, teamId, delta);
+                    }
+                }
+            }
+        });
+    }
+
+    private void applyDelta(Connection connection, PreparedStatement selectBounds, PreparedStatement apply,
+                            Long teamId, Delta delta) throws SQLException {
+        Integer storedMin;
+        Integer storedMax;
+        selectBounds.setLong(1, teamId);
+        try (ResultSet rs = selectBounds.executeQuery()) {
+            rs.next();
+            storedMin = rs.getObject(1, Integer.class);
+            storedMax = rs.getObject(2, Integer.class);
+        }
+        Integer ageMin = min(storedMin, delta.addedMin);
+        Integer ageMax = max(storedMax, delta.addedMax);
+
+        apply.setLong(1, delta.count);
+        apply.setLong(2, delta.ageSum);
+        setInteger(apply, 3, ageMin);
+        setInteger(apply, 4, ageMax);
+        apply.setLong(5, teamId);
+        apply.executeUpdate();
+
+        // 경계값을 가진 member 가 빠졌으면 남은 member 중에서 다시 찾아야 한다
+        boolean minRemoved = delta.removedMin != null && ageMin != null && delta.removedMin <= ageMin;
+        boolean maxRemoved = delta.removedMax != null && ageMax != null && delta.removedMax >= ageMax;
+        if (minRemoved || maxRemoved) {
+            execute(connection, REFRESH_BOUNDS, teamId);
+        }
+    }
+
+    private static void execute(Connection connection, String sql, Long teamId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, teamId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void setInteger(PreparedStatement statement, int index, Integer value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.INTEGER);
+        } else {
+            statement.setInt(index, value);
+        }
+    }
+
+    private static Integer min(Integer a, Integer b) {
+        return a == null ? b : b == null ? a : Math.min(a, b);
+    }
+
+    private static Integer max(Integer a, Integer b) {
+        return a == null ? b : b == null ? a : Math.max(a, b);
+    }
+
+    /**
+     * 트랜잭션 하나에서 팀 하나에 생긴 변화. 나이는 넣은 쪽과 뺀 쪽의 최소/최대만 기억한다.
+     */
+    private static class Delta {
+        private long count;
+        private long ageSum;
+        private Integer addedMin;
+        private Integer addedMax;
+        private Integer removedMin;
+        private Integer removedMax;
+        // true 면 변화량 대신 member 에서 다시 집계한다
+        private boolean rebuild;
+
+        private static Delta rebuilding() {
+            Delta delta = new Delta();
+            delta.rebuild = true;
+            return delta;
+        }
+    }
+
+    /**
+     * 트랜잭션 하나에서 팀별로 모은 변화량. 커밋 직전에 한 번만 반영한다.
+     */
+    private class DirtyTeams implements TransactionSynchronization, BeforeTransactionCompletionProcess {
+        private final Map<Long, Delta> deltas = new HashMap<>();
+
+        // Spring 의 beforeCommit 은 커밋할 때의 flush 보다 먼저 불리므로 그 뒤에 부르는 Hibernate 쪽 콜백을 쓴다
+        @Override
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            apply(deltas);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResource(TeamStatsRepository.this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.seungh1024.repository;
+
+import com.seungh1024.dto.UsernameMatch;
+
+/**
+ * username like 패턴 만들기와, DB 를 거치지 않고 결과를 나눌 때(batchSearch) 쓰는 같은 규칙의 비교.
+ * 비교는 MySQL 기본 collation(_ai_ci)처럼 대소문자/악센트를 무시한다. SQL 의 = / in (...) 도 같은 collation 을 쓰므로 EXACT 도 같다.
+ */
+final class UsernamePatterns {
+    static final char ESCAPE = '!';
+
+    private UsernamePatterns() {
+    }
+
+    static String like(UsernameMatch match, String value) {
+        String escaped = escape(value);
+        return match == UsernameMatch.CONTAINS ? "%" + escaped + "%" : escaped + "%";
+    }
+
+    static boolean matches(UsernameMatch match, String value, String username) {
+        if (username == null) {
+            return false;
+        }
+        String normalizedUsername = UsernameTrigramIndex.normalize(username);
+        String normalizedValue = UsernameTrigramIndex.normalize(value);
+        return switch (match) {
+            case PREFIX -> normalizedUsername.startsWith(normalizedValue);
+            case CONTAINS -> normalizedUsername.contains(normalizedValue);
+            default -> normalizedUsername.equals(normalizedValue);
+        };
+    }
+
+    // 입력값의 %, _ 가 와일드카드로 해석되지 않게 한다
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                escaped.append(ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
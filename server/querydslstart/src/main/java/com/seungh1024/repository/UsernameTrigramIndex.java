@@ -0,0 +1,276 @@
+package com.seungh1024.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * username 의 3글자 조각(trigram) -> member id 목록. like '%값%' 검색 전에 후보 id 를 좁혀서 member 전체 scan 을 피한다.
+ * <p>
+ * 후보는 실제 결과보다 많아도 된다(쿼리에서 like 로 다시 거른다). 그래서 빠짐만 없으면 되고
+ * <ul>
+ *     <li>MySQL 기본 collation(_ai_ci)처럼 대소문자/악센트를 무시하도록 정규화해서 조각을 만든다</li>
+ *     <li>삭제된 member, 롤백된 insert 는 지우지 않는다 (재시작/rebuild 때 정리)</li>
+ *     <li>insert 는 MemberWriteListener(persist), JDBC/bulk 쓰기는 쓰는 쪽이 index 를 호출해서 넣는다</li>
+ * </ul>
+ * 인스턴스마다 메모리에 따로 가지므로 후보를 만들기 전에 마지막으로 넣은 id 이후의 member 를 읽어서(catch-up)
+ * 다른 인스턴스나 SQL 로 직접 넣은 member 도 넣는다. catch-up 에 실패하면 후보 대신 null 을 돌려서 like 로만 검색하게 한다.
+ * 마지막 id 보다 작은 id 로 늦게 커밋된 insert, 다른 인스턴스의 username 변경은 catch-up 으로 찾지 못하므로 rebuild-interval 마다 전체를 다시 만든다.
+ * id 는 조각마다 정렬된 long 배열로 들고 있어서 100만 명 기준 수십 MB 정도 쓴다.
+ */
+@Slf4j
+@Component
+public class UsernameTrigramIndex implements DisposableBean {
+    private static final int GRAM = 3;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int maxCandidates;
+    private final Duration rebuildInterval;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 인덱스에 넣은 가장 큰 member id. catch-up 은 이보다 큰 id 만 읽는다
+    private final AtomicLong lastIndexedId = new AtomicLong();
+
+    private Map<String, Postings> postings = new HashMap<>();
+    private List<Object[]> addedDuringBuild;
+    private volatile boolean ready;
+    private ScheduledExecutorService scheduler;
+
+    public UsernameTrigramIndex(JdbcTemplate jdbcTemplate,
+                                @Value("${member.username-index.enabled:true}") boolean enabled,
+                                @Value("${member.username-index.max-candidates:1000}") int maxCandidates,
+                                @Value("${member.username-index.rebuild-interval:1h}") Duration rebuildInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.maxCandidates = maxCandidates;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        rebuild();
+        if (!rebuildInterval.isZero() && !rebuildInterval.isNegative()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "username-index-rebuild");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::rebuildQuietly, rebuildInterval.toMillis(), rebuildInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("username trigram index: rebuild 실패, 기존 인덱스를 계속 쓴다", e);
+        }
+    }
+
+    /**
+     * member 테이블 전체를 다시 읽어서 만든다. 만드는 동안 들어온 insert 는 끝난 뒤 한 번 더 넣는다.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            addedDuringBuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<String, Postings> built = new HashMap<>();
+        // id 순으로 읽으면 조각별 목록에 뒤로 붙이기만 하면 된다
+        jdbcTemplate.query("select member_id, username from member where username is not null order by member_id",
+                rs -> {
+                    long memberId = rs.getLong(1);
+                    add(built, memberId, rs.getString(2));
+                    lastIndexedId.accumulateAndGet(memberId, Math::max);
+                });
+
+        lock.writeLock().lock();
+        try {
+            for (Object[] added : addedDuringBuild) {
+                add(built, (Long) added[0], (String) added[1]);
+            }
+            addedDuringBuild = null;
+            postings = built;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("username trigram index: {}개 조각", built.size());
+    }
+
+    public void index(Long memberId, String username) {
+        if (memberId == null || username == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            add(postings, memberId, username);
+            lastIndexedId.accumulateAndGet(memberId, Math::max);
+            if (addedDuringBuild != null) {
+                addedDuringBuild.add(new Object[]{memberId, username});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * afterId 보다 큰 id 의 member 를 넣는다. JDBC batch insert 처럼 id 를 돌려받지 못한 쓰기 뒤에 쓴다.
+     */
+    public void indexAfter(long afterId) {
+        jdbcTemplate.query("select member_id, username from member where member_id > ? and username is not null",
+                rs -> {
+                    index(rs.getLong(1), rs.getString(2));
+                }, afterId);
+    }
+
+    /**
+     * value 를 포함할 수 있는 member id (오름차순). 인덱스로 좁힐 수 없으면 null.
+     * (아직 만드는 중, value 가 3글자 미만, catch-up 실패, 후보가 maxCandidates 초과 - 결과가 많은 검색이라 scan 과 차이가 적다)
+     * 매번 member_id 범위 검색 한 번으로 다른 곳에서 넣은 member 를 먼저 따라잡는다.
+     */
+    public List<Long> candidates(String value) {
+        Set<String> grams = grams(value);
+        if (!ready || grams.isEmpty()) {
+            return null;
+        }
+        try {
+            indexAfter(lastIndexedId.get());
+        } catch (DataAccessException e) {
+            log.warn("username trigram index: catch-up 실패, like 로 검색한다", e);
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>(grams.size());
+            for (String gram : grams) {
+                Postings list = postings.get(gram);
+                if (list == null) {
+                    return List.of();
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(Postings::size));
+
+            List<Long> candidates = new ArrayList<>();
+            Postings smallest = lists.get(0);
+            for (int i = 0; i < smallest.size(); i++) {
+                long id = smallest.get(i);
+                if (containsInAll(lists, id)) {
+                    if (candidates.size() == maxCandidates) {
+                        return null;
+                    }
+                    candidates.add(id);
+                }
+            }
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean containsInAll(List<Postings> lists, long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(Map<String, Postings> target, long memberId, String username) {
+        for (String gram : grams(username)) {
+            target.computeIfAbsent(gram, key -> new Postings()).add(memberId);
+        }
+    }
+
+    static String normalize(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String value) {
+        if (value == null) {
+            return Set.of();
+        }
+        String normalized = normalize(value);
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /**
+     * 정렬된 member id 목록.
+     */
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return ids[index];
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        void add(long id) {
+            int position = size == 0 || ids[size - 1] < id ? -(size + 1) : Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            int insertAt = -(position + 1);
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.seungh1024.repository.support;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.support.NumberConversion;
+import com.querydsl.core.support.ReplaceVisitor;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQuery;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 바깥 row 의 그룹(팀 등)별 집계와 비교하는 상관(correlated) 서브쿼리를 group by 한 derived table join 으로 바꾼다.
+ * <pre>
+ * where m.age = (select max(s.age) from Member s where s.team = m.team)
+ * -> left join (select s.team.id as groupKey, max(s.age) as aggregate from Member s group by s.team.id) as grouped1
+ *        on grouped1.groupKey = m.team.id
+ *    where m.age = grouped1.aggregate
+ * </pre>
+ * MySQL 은 상관 서브쿼리를 바깥 row 마다 다시 실행하지만(DEPENDENT SUBQUERY) derived table 은 그룹별 집계를 한 번만 만든다.
+ * 맞는 그룹이 없으면 서브쿼리처럼 null 이 되도록 left join 한다. (Hibernate 6.1 HQL 의 from 절 서브쿼리)
+ * <p>
+ * 바꾸는 서브쿼리는 projection 이 max/min/avg/sum 하나이고, where 에 바깥 alias 와의 = 비교가 하나 있고(나머지 조건은 서브쿼리 안의 alias 만),
+ * group by/having 이 없는 것이다. 그 밖의 서브쿼리는 그대로 둔다.
+ * <ul>
+ *     <li>바깥 쿼리와 상관없는 서브쿼리는 MySQL 이 한 번만 실행해서 결과를 재사용한다</li>
+ *     <li>count 는 그룹이 없을 때 0 이 아니라 null 이 되므로 바꾸지 않는다</li>
+ * </ul>
+ */
+public final class AggregateSubqueries {
+    private static final Set<Operator> AGGREGATES = Set.of(Ops.AggOps.MAX_AGG, Ops.AggOps.MIN_AGG, Ops.AggOps.AVG_AGG,
+            Ops.AggOps.SUM_AGG);
+    private static final String GROUP_KEY = "groupKey";
+    private static final String AGGREGATE = "aggregate";
+    private static final String ALIAS_PREFIX = "grouped";
+
+    private AggregateSubqueries() {
+    }
+
+    /**
+     * query 의 where/select 절에 있는 그룹별 집계 서브쿼리를 derived table join 으로 바꾼다. query 를 그대로 수정해서 돌려준다.
+     */
+    public static <T> JPAQuery<T> joinGrouped(EntityManager em, JPAQuery<T> query) {
+        QueryMetadata metadata = query.getMetadata();
+        Rewriter rewriter = new Rewriter(em, declared(metadata));
+        Predicate where = metadata.getWhere() != null ? (Predicate) metadata.getWhere().accept(rewriter, null) : null;
+        Expression<?> projection = metadata.getProjection() != null
+                ? metadata.getProjection().accept(rewriter, null)
+                : null;
+        if (rewriter.joins.isEmpty()) {
+            return query;
+        }
+        for (GroupedJoin join : rewriter.joins) {
+            metadata.addJoin(JoinType.LEFTJOIN, join.target());
+            metadata.addJoinCondition(join.condition());
+        }
+        // clearWhere 는 빈 조건을 남기므로 where 가 있을 때만 바꾼다
+        if (where != null) {
+            metadata.clearWhere();
+            metadata.addWhere(where);
+        }
+        metadata.setProjection(projection);
+        return query;
+    }
+
+    // from/join 에서 선언된 alias
+    private static Set<Expression<?>> declared(QueryMetadata metadata) {
+        Set<Expression<?>> declared = new HashSet<>();
+        for (JoinExpression join : metadata.getJoins()) {
+            Expression<?> target = join.getTarget();
+            if (target instanceof Operation<?> alias && alias.getOperator() == Ops.ALIAS) {
+                declared.add(alias.getArg(1));
+            } else if (target instanceof Path<?> path) {
+                declared.add(path.getRoot());
+            }
+        }
+        return declared;
+    }
+
+    private static void conjuncts(Predicate predicate, List<Predicate> conjuncts) {
+        if (predicate instanceof Operation<?> and && and.getOperator() == Ops.AND) {
+            conjuncts((Predicate) and.getArg(0), conjuncts);
+            conjuncts((Predicate) and.getArg(1), conjuncts);
+        } else {
+            conjuncts.add(predicate);
+        }
+    }
+
+    // JPA 서브쿼리의 집계 projection 은 결과 타입 변환(NumberConversion)으로 감싸여 있다
+    private static Expression<?> aggregateOf(QueryMetadata metadata) {
+        Expression<?> projection = metadata.getProjection();
+        if (projection instanceof NumberConversion<?> conversion) {
+            return conversion.getArgs().get(0);
+        }
+        return projection;
+    }
+
+    private static <A> Path<A> column(Class<A> type, Path<?> alias, String name) {
+        return Expressions.path(type, alias, name);
+    }
+
+    /**
+     * @param innerKey 서브쿼리 쪽 그룹 키 (group by 할 식)
+     * @param outerKey 바깥 쿼리 쪽 그룹 키 (join 조건)
+     * @param rest     상관 조건을 뺀 나머지 서브쿼리 조건. 없으면 null
+     */
+    private record Correlation(Path<?> innerKey, Path<?> outerKey, Predicate rest) {
+    }
+
+    private record GroupedJoin(Expression<?> target, Predicate condition) {
+    }
+
+    private static final class Rewriter extends ReplaceVisitor<Void> {
+        private final EntityManager em;
+        private final Set<Expression<?>> outerAliases;
+        private final List<GroupedJoin> joins = new ArrayList<>();
+
+        Rewriter(EntityManager em, Set<Expression<?>> outerAliases) {
+            this.em = em;
+            this.outerAliases = outerAliases;
+        }
+
+        @Override
+        public Expression<?> visit(SubQueryExpression<?> expr, Void context) {
+            QueryMetadata source = expr.getMetadata();
+            Correlation correlation = correlation(source);
+            if (correlation == null) {
+                return expr;
+            }
+            Path<Tuple> alias = Expressions.path(Tuple.class, ALIAS_PREFIX + (joins.size() + 1));
+            Expression<?> aggregate = aggregateOf(source);
+
+            JPQLQuery<Tuple> grouped = JPAExpressions.select(
+                    ExpressionUtils.as(correlation.innerKey(), GROUP_KEY),
+                    ExpressionUtils.as(aggregate, AGGREGATE));
+            QueryMetadata target = grouped.getMetadata();
+            for (JoinExpression join : source.getJoins()) {
+                target.addJoin(join.getType(), join.getTarget());
+                if (join.getCondition() != null) {
+                    target.addJoinCondition(join.getCondition());
+                }
+                for (JoinFlag flag : join.getFlags()) {
+                    target.addJoinFlag(flag);
+                }
+            }
+            if (correlation.rest() != null) {
+                target.addWhere(correlation.rest());
+            }
+            target.addGroupBy(correlation.innerKey());
+
+            Path<?> groupKey = column(correlation.innerKey().getType(), alias, GROUP_KEY);
+            joins.add(new GroupedJoin(ExpressionUtils.as(grouped, alias),
+                    Expressions.booleanOperation(Ops.EQ, groupKey, correlation.outerKey())));
+            return column(aggregate.getType(), alias, AGGREGATE);
+        }
+
+        private Correlation correlation(QueryMetadata source) {
+            if (!(aggregateOf(source) instanceof Operation<?> projection)
+                    || !AGGREGATES.contains(projection.getOperator())
+                    || !source.getGroupBy().isEmpty() || source.getHaving() != null || source.getWhere() == null) {
+                return null;
+            }
+            Set<Expression<?>> declared = declared(source);
+            Set<Expression<?>> used = new HashSet<>();
+            CountQueries.collect(projection, used);
+            if (!declared.containsAll(used)) {
+                return null;
+            }
+
+            List<Predicate> conjuncts = new ArrayList<>();
+            conjuncts(source.getWhere(), conjuncts);
+            Path<?> innerKey = null;
+            Path<?> outerKey = null;
+            BooleanBuilder rest = new BooleanBuilder();
+            for (Predicate predicate : conjuncts) {
+                Set<Expression<?>> roots = new HashSet<>();
+                CountQueries.collect(predicate, roots);
+                if (declared.containsAll(roots)) {
+                    rest.and(predicate);
+                    continue;
+                }
+                // 바깥 alias 를 참조하는 조건은 inner.key = outer.key 하나만 받는다
+                if (innerKey != null || !(predicate instanceof Operation<?> eq) || eq.getOperator() != Ops.EQ
+                        || !(eq.getArg(0) instanceof Path<?> left) || !(eq.getArg(1) instanceof Path<?> right)) {
+                    return null;
+                }
+                if (declared.contains(left.getRoot()) && outerAliases.contains(right.getRoot())) {
+                    innerKey = left;
+                    outerKey = right;
+                } else if (declared.contains(right.getRoot()) && outerAliases.contains(left.getRoot())) {
+                    innerKey = right;
+                    outerKey = left;
+                } else {
+                    return null;
+                }
+            }
+            if (innerKey == null) {
+                return null;
+            }
+            return new Correlation(keyOf(innerKey), keyOf(outerKey), rest.getValue());
+        }
+
+        // 연관 엔티티(s.team)는 id(s.team.id)로 묶고 비교한다. derived table 의 컬럼은 엔티티가 아닌 값이어야 한다
+        private Path<?> keyOf(Path<?> path) {
+            try {
+                EntityType<?> entity = em.getMetamodel().entity(path.getType());
+                SingularAttribute<?, ?> id = entity.getId(entity.getIdType().getJavaType());
+                return column(id.getJavaType(), path, id.getName());
+            } catch (IllegalArgumentException e) {
+                return path;
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package com.seungh1024.repository.support;
+
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.JoinFlag;
+import com.querydsl.core.JoinType;
+import com.querydsl.core.QueryFlag;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.CollectionExpression;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.MapExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.Visitor;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Wildcard;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.JPAQueryMixin;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.metamodel.EntityType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * count 쿼리 최적화 유틸.
+ * to-one 연관관계에 대한 left join 은 row 수를 바꾸지 않으므로 where/group by/having/select 에서
+ * 쓰지 않는 join 은 count 쿼리에서 빼도 결과가 같다.
+ */
+public final class CountQueries {
+    private static final int MAX_CACHED_PLANS = 1_000;
+    private static final int PROJECTION_PART = 0;
+    // 가장 오래 안 쓴 모양부터 버린다
+    private static final Map<String, CountPlan> PLANS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CountPlan> eldest) {
+            return size() > MAX_CACHED_PLANS;
+        }
+    };
+    private static final LongAdder PLAN_HITS = new LongAdder();
+    private static final LongAdder PLAN_MISSES = new LongAdder();
+    // derived table 의 select 항목은 alias 가 있어야 한다
+    private static final Expression<Integer> GROUP_ROW =
+            ExpressionUtils.as(Expressions.numberTemplate(Integer.class, "1"), "groupRow");
+
+    private CountQueries() {
+    }
+
+    /**
+     * count 용으로 쓰지 않는 to-one left join 을 제거한 쿼리를 새로 만든다. order by, offset/limit 은 복사하지 않는다.
+     */
+    public static <T> JPAQuery<T> pruneJoins(JPAQueryFactory queryFactory, JPAQuery<T> query) {
+        QueryMetadata source = query.getMetadata();
+        Set<Expression<?>> referenced = new HashSet<>();
+        collect(source.getProjection(), referenced);
+        boolean[] kept = keptJoins(source, referenced);
+
+        JPAQuery<T> pruned = copy(queryFactory, source, kept, true);
+        pruned.getMetadata().setProjection(source.getProjection());
+        pruned.getMetadata().setDistinct(source.isDistinct());
+        return pruned;
+    }
+
+    /**
+     * content 쿼리에서 count 를 만든다. (deprecated 된 fetchCount 대체)
+     * order by, offset/limit, fetch join, 쓰지 않는 to-one join 을 빼고 select 절은 count 로 바꾼다.
+     * <ul>
+     *     <li>group by, distinct 없음: count(*)</li>
+     *     <li>distinct 단일 값 또는 group by 하나(having 없음)가 null 이 될 수 없는 엔티티/id: count(distinct 값)</li>
+     *     <li>그 외: select count(*) from (select 1 ... group by 키) 로 그룹 수를 DB 에서 센다.
+     *     distinct 는 select 컬럼으로 group by 한다. count(distinct) 와 달리 null 도 한 그룹으로 센다</li>
+     * </ul>
+     * 만든 count JPQL 은 content 쿼리 모양(상수를 ?n 으로 둔 JPQL)별로 캐시한다. content 상수 중 몇 번째가 count 의 몇 번째
+     * 파라미터인지도 같이 저장해서, 캐시에 있으면 content 쿼리를 한 번 직렬화하고 상수만 다시 넣는다.
+     * content 쿼리의 metadata 를 바로 읽으므로 정렬/페이징을 붙이기 전에 부른다.
+     */
+    public static LongSupplier countOf(JPAQueryFactory queryFactory, EntityManager em, JPAQuery<?> contentQuery) {
+        QueryMetadata source = contentQuery.getMetadata();
+        JPQLTemplates templates = JPAProvider.getTemplates(em);
+        JPQLSerializer shape = new JPQLSerializer(templates, em);
+        shape.serialize(source, false, null);
+        String key = shape.toString();
+        List<Object> contentConstants = shape.getConstants();
+
+        CountPlan plan;
+        synchronized (PLANS) {
+            plan = PLANS.get(key);
+        }
+        List<Object> constants;
+        if (plan != null) {
+            PLAN_HITS.increment();
+            constants = plan.bind(contentConstants);
+        } else {
+            PLAN_MISSES.increment();
+            plan = createPlan(queryFactory, em, templates, source, contentConstants);
+            constants = plan.constants();
+            if (plan.positions() != null) {
+                synchronized (PLANS) {
+                    // 상수 값은 쿼리마다 다르므로 JPQL 과 위치만 남긴다
+                    PLANS.put(key, new CountPlan(plan.jpql(), List.of(), plan.positions()));
+                }
+            }
+        }
+        String jpql = plan.jpql();
+        Map<ParamExpression<?>, Object> params = source.getParams();
+        return () -> {
+            Query count = em.createQuery(jpql);
+            JPAUtil.setConstants(count, constants, params);
+            return ((Number) count.getSingleResult()).longValue();
+        };
+    }
+
+    public static long getPlanHitCount() {
+        return PLAN_HITS.sum();
+    }
+
+    public static long getPlanMissCount() {
+        return PLAN_MISSES.sum();
+    }
+
+    private static CountPlan createPlan(JPAQueryFactory queryFactory, EntityManager em, JPQLTemplates templates,
+                                        QueryMetadata source, List<Object> contentConstants) {
+        // count 쿼리에 옮겨지는 content 부분(contentParts 의 번호)을 count 쪽 직렬화 순서대로 모은다
+        List<Integer> parts = new ArrayList<>();
+        QueryMetadata count;
+        boolean derived = false;
+        List<Expression<?>> groupBy = source.getGroupBy();
+        if (groupBy.isEmpty() && !source.isDistinct()) {
+            boolean[] kept = keptJoins(source, new HashSet<>());
+            count = copy(queryFactory, source, kept, false).getMetadata();
+            count.setProjection(Wildcard.count);
+            addJoinParts(parts, kept);
+            parts.add(wherePart(source));
+        } else {
+            List<Expression<?>> keys = groupBy.isEmpty() ? projectionKeys(source.getProjection()) : groupBy;
+            Set<Expression<?>> referenced = new HashSet<>();
+            keys.forEach(key -> collect(key, referenced));
+            boolean[] kept = keptJoins(source, referenced);
+
+            if (keys.size() == 1 && source.getHaving() == null && isNonNull(em, source, keys.get(0))) {
+                count = copy(queryFactory, source, kept, false).getMetadata();
+                count.setProjection(ExpressionUtils.operation(Long.class, Ops.AggOps.COUNT_DISTINCT_AGG, keys.get(0)));
+                addJoinParts(parts, kept);
+                parts.add(wherePart(source));
+            } else {
+                count = copy(queryFactory, source, kept, true).getMetadata();
+                if (groupBy.isEmpty()) {
+                    keys.forEach(count::addGroupBy);
+                }
+                count.setProjection(GROUP_ROW);
+                derived = true;
+                addJoinParts(parts, kept);
+                parts.add(wherePart(source));
+                // distinct 의 group by 키는 select 컬럼에서 왔다
+                parts.add(groupBy.isEmpty() ? PROJECTION_PART : wherePart(source) + 1);
+                parts.add(wherePart(source) + 2);
+            }
+        }
+
+        JPQLSerializer serializer = new JPQLSerializer(templates, em);
+        serializer.serialize(count, false, null);
+        String jpql = derived ? "select count(*) from (" + serializer + ") grouped" : serializer.toString();
+        List<Object> constants = List.copyOf(serializer.getConstants());
+        return new CountPlan(jpql, constants, positions(templates, em, source, parts, contentConstants, constants));
+    }
+
+    /**
+     * count 상수 i 가 content 상수 몇 번째인지. 부분별로 따로 직렬화한 상수를 이어 붙인 것이 실제 직렬화 결과와 다르면
+     * (같은 값을 한 번만 넣었거나 flag 에 상수가 있는 등) 위치를 믿을 수 없으므로 null 을 돌려주고 캐시하지 않는다.
+     */
+    private static int[] positions(JPQLTemplates templates, EntityManager em, QueryMetadata source, List<Integer> parts,
+                                   List<Object> contentConstants, List<Object> countConstants) {
+        if (!source.getFlags().isEmpty()) {
+            return null;
+        }
+        List<List<Expression<?>>> contentParts = contentParts(source);
+        int[] offsets = new int[contentParts.size()];
+        int[] sizes = new int[contentParts.size()];
+        List<Object> concatenated = new ArrayList<>();
+        for (int i = 0; i < contentParts.size(); i++) {
+            offsets[i] = concatenated.size();
+            for (Expression<?> expr : contentParts.get(i)) {
+                JPQLSerializer serializer = new JPQLSerializer(templates, em);
+                serializer.handle(expr);
+                concatenated.addAll(serializer.getConstants());
+            }
+            sizes[i] = concatenated.size() - offsets[i];
+        }
+        if (!concatenated.equals(contentConstants)) {
+            return null;
+        }
+
+        int[] positions = new int[countConstants.size()];
+        int next = 0;
+        for (int part : parts) {
+            for (int j = 0; j < sizes[part]; j++) {
+                if (next == positions.length) {
+                    return null;
+                }
+                positions[next++] = offsets[part] + j;
+            }
+        }
+        if (next != positions.length) {
+            return null;
+        }
+        for (int i = 0; i < positions.length; i++) {
+            if (!Objects.equals(contentConstants.get(positions[i]), countConstants.get(i))) {
+                return null;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * JPQLSerializer 가 content 쿼리를 직렬화하는 순서대로 나눈 부분.
+     * 0: select, 1 + 2i: i 번째 join 대상, 2 + 2i: 그 join 조건, 그 다음 where, group by, having, order by
+     */
+    private static List<List<Expression<?>>> contentParts(QueryMetadata source) {
+        List<List<Expression<?>>> parts = new ArrayList<>();
+        parts.add(part(source.getProjection()));
+        for (JoinExpression join : source.getJoins()) {
+            parts.add(part(join.getTarget()));
+            parts.add(part(join.getCondition()));
+        }
+        parts.add(part(source.getWhere()));
+        parts.add(source.getGroupBy());
+        parts.add(part(source.getHaving()));
+        List<Expression<?>> orderBy = new ArrayList<>();
+        for (OrderSpecifier<?> order : source.getOrderBy()) {
+            orderBy.add(order.getTarget());
+        }
+        parts.add(orderBy);
+        return parts;
+    }
+
+    private static List<Expression<?>> part(Expression<?> expr) {
+        return expr != null ? List.of(expr) : List.of();
+    }
+
+    private static void addJoinParts(List<Integer> parts, boolean[] kept) {
+        for (int i = 0; i < kept.length; i++) {
+            if (kept[i]) {
+                parts.add(1 + 2 * i);
+                parts.add(2 + 2 * i);
+            }
+        }
+    }
+
+    private static int wherePart(QueryMetadata source) {
+        return 1 + 2 * source.getJoins().size();
+    }
+
+    // distinct 로 비교하는 select 컬럼들. 생성자/빈 projection 은 인자 하나하나가 컬럼이다
+    private static List<Expression<?>> projectionKeys(Expression<?> projection) {
+        List<Expression<?>> columns = projection instanceof FactoryExpression<?> factory
+                ? factory.getArgs()
+                : List.of(projection);
+        List<Expression<?>> keys = new ArrayList<>(columns.size());
+        for (Expression<?> column : columns) {
+            // select 절 alias(as) 는 count/group by 안에 쓸 수 없다
+            keys.add(column instanceof Operation<?> operation && operation.getOperator() == Ops.ALIAS
+                    ? operation.getArg(0)
+                    : column);
+        }
+        return keys;
+    }
+
+    /**
+     * from 절 엔티티나 inner join 한 엔티티, 또는 그 id 면 null 이 아니다. left join alias 나 일반 컬럼은 null 일 수 있다.
+     */
+    private static boolean isNonNull(EntityManager em, QueryMetadata source, Expression<?> key) {
+        if (!(key instanceof Path<?> path)) {
+            return false;
+        }
+        Path<?> parent = path.getMetadata().getParent();
+        if (parent != null) {
+            if (parent.getMetadata().getParent() != null || !isIdAttribute(em, parent.getType(), path.getMetadata().getName())) {
+                return false;
+            }
+            path = parent;
+        }
+        if (!(path instanceof EntityPath<?>)) {
+            return false;
+        }
+        for (JoinExpression join : source.getJoins()) {
+            Expression<?> target = join.getTarget();
+            Expression<?> variable = target instanceof Operation<?> alias && alias.getOperator() == Ops.ALIAS
+                    ? alias.getArg(1)
+                    : target;
+            if (variable.equals(path)) {
+                return join.getType() == JoinType.DEFAULT || join.getType() == JoinType.JOIN
+                        || join.getType() == JoinType.INNERJOIN;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdAttribute(EntityManager em, Class<?> entityType, String attribute) {
+        try {
+            EntityType<?> entity = em.getMetamodel().entity(entityType);
+            return entity.hasSingleIdAttribute()
+                    && entity.getId(entity.getIdType().getJavaType()).getName().equals(attribute);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean[] keptJoins(QueryMetadata source, Set<Expression<?>> referenced) {
+        collect(source.getWhere(), referenced);
+        collect(source.getHaving(), referenced);
+        source.getGroupBy().forEach(expr -> collect(expr, referenced));
+
+        // 뒤쪽 join 이 앞쪽 alias 를 경유할 수 있으므로 뒤에서부터 확인한다
+        List<JoinExpression> joins = source.getJoins();
+        boolean[] kept = new boolean[joins.size()];
+        for (int i = joins.size() - 1; i >= 0; i--) {
+            JoinExpression join = joins.get(i);
+            if (isRemovable(join, referenced)) {
+                continue;
+            }
+            kept[i] = true;
+            collect(join.getTarget(), referenced);
+            collect(join.getCondition(), referenced);
+        }
+        return kept;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> JPAQuery<T> copy(JPAQueryFactory queryFactory, QueryMetadata source, boolean[] kept,
+                                        boolean withGrouping) {
+        JPAQuery<T> copy = (JPAQuery<T>) queryFactory.query();
+        QueryMetadata target = copy.getMetadata();
+        List<JoinExpression> joins = source.getJoins();
+        for (int i = 0; i < joins.size(); i++) {
+            if (!kept[i]) {
+                continue;
+            }
+            JoinExpression join = joins.get(i);
+            target.addJoin(join.getType(), join.getTarget());
+            if (join.getCondition() != null) {
+                target.addJoinCondition(join.getCondition());
+            }
+            // count 에는 fetch join 이 필요 없다 (select 절에 엔티티가 없으면 오류가 난다)
+            for (JoinFlag flag : join.getFlags()) {
+                if (!flag.equals(JPAQueryMixin.FETCH) && !flag.equals(JPAQueryMixin.FETCH_ALL_PROPERTIES)) {
+                    target.addJoinFlag(flag);
+                }
+            }
+        }
+        if (source.getWhere() != null) {
+            target.addWhere(source.getWhere());
+        }
+        if (withGrouping) {
+            source.getGroupBy().forEach(target::addGroupBy);
+            if (source.getHaving() != null) {
+                target.addHaving(source.getHaving());
+            }
+        }
+        for (QueryFlag flag : source.getFlags()) {
+            target.addFlag(flag);
+        }
+        for (Map.Entry<ParamExpression<?>, Object> param : source.getParams().entrySet()) {
+            target.setParam((ParamExpression<Object>) param.getKey(), param.getValue());
+        }
+        return copy;
+    }
+
+    private static boolean isRemovable(JoinExpression join, Set<Expression<?>> referenced) {
+        if (join.getType() != JoinType.LEFTJOIN || !(join.getTarget() instanceof Operation<?> alias)
+                || alias.getOperator() != Ops.ALIAS) {
+            return false;
+        }
+        Expression<?> association = alias.getArg(0);
+        Expression<?> variable = alias.getArg(1);
+        // 컬렉션(to-many) join 은 row 를 늘리므로 남겨둔다
+        if (association instanceof CollectionExpression || association instanceof MapExpression) {
+            return false;
+        }
+        return !referenced.contains(variable);
+    }
+
+    /**
+     * 식에서 사용하는 path 의 root(alias)를 roots 에 모은다. 서브쿼리는 안쪽까지 본다.
+     */
+    static void collect(Expression<?> expr, Set<Expression<?>> roots) {
+        if (expr != null) {
+            expr.accept(RootCollector.INSTANCE, roots);
+        }
+    }
+
+    /**
+     * @param jpql      count JPQL
+     * @param constants 만들 때 쓴 content 쿼리의 count 상수 (캐시에는 넣지 않는다)
+     * @param positions count 상수 i 가 content 상수 몇 번째인지. null 이면 이 쿼리에서만 쓴다
+     */
+    private record CountPlan(String jpql, List<Object> constants, int[] positions) {
+        List<Object> bind(List<Object> contentConstants) {
+            List<Object> bound = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                bound.add(contentConstants.get(position));
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * 식에서 사용하는 path 의 root(alias)를 모은다.
+     */
+    private enum RootCollector implements Visitor<Void, Set<Expression<?>>> {
+        INSTANCE;
+
+        @Override
+        public Void visit(Constant<?> expr, Set<Expression<?>> roots) {
+            return null;
+        }
+
+        @Override
+        public Void visit(FactoryExpression<?> expr, Set<Expression<?>> roots) {
+            expr.getArgs().forEach(arg -> collect(arg, roots));
+            return null;
+        }
+
+        @Override
+        public Void visit(Operation<?> expr, Set<Expression<?>> roots) {
+            expr.getArgs().forEach(arg -> collect(arg, roots));
+            return null;
+        }
+
+        @Override
+        public Void visit(ParamExpression<?> expr, Set<Expression<?>> roots) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Path<?> expr, Set<Expression<?>> roots) {
+            roots.add(expr.getRoot());
+            return null;
+        }
+
+        @Override
+        public Void visit(SubQueryExpression<?> expr, Set<Expression<?>> roots) {
+            QueryMetadata metadata = expr.getMetadata();
+            for (JoinExpression join : metadata.getJoins()) {
+                collect(join.getTarget(), roots);
+                collect(join.getCondition(), roots);
+            }
+            collect(metadata.getWhere(), roots);
+            collect(metadata.getHaving(), roots);
+            collect(metadata.getProjection(), roots);
+            metadata.getGroupBy().forEach(groupBy -> collect(groupBy, roots));
+            return null;
+        }
+
+        @Override
+        public Void visit(TemplateExpression<?> expr, Set<Expression<?>> roots) {
+            for (Object arg : expr.getArgs()) {
+                if (arg instanceof Expression<?> argExpr) {
+                    collect(argExpr, roots);
+                }
+            }
+            return null;
+        }
+    }
+}
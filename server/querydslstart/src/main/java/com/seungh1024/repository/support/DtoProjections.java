@@ -0,0 +1,266 @@
+package com.seungh1024.repository.support;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionException;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Projections.bean/fields/constructor 대신 쓰는 DTO 프로젝션.
+ * Querydsl 기본 구현은 row 마다 리플렉션으로 생성/대입하고, @QueryProjection 은 DTO 가 Querydsl 에 의존하게 된다.
+ * 여기서는 DTO 클래스별로 생성자/setter 를 LambdaMetafactory(Supplier, BiConsumer) 또는 MethodHandle 로 한 번만 만들어 캐시한다.
+ * 값이 null 인 프로퍼티는 QBean 과 같이 대입하지 않는다.
+ */
+public final class DtoProjections {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<DtoAccessors> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected DtoAccessors computeValue(Class<?> type) {
+            return new DtoAccessors(type);
+        }
+    };
+
+    private DtoProjections() {
+    }
+
+    /**
+     * 인자 타입이 맞는 public 생성자를 호출한다.
+     */
+    public static <T> FactoryExpressionBase<T> constructor(Class<? extends T> type, Expression<?>... args) {
+        Class<?>[] argTypes = Arrays.stream(args).map(Expression::getType).toArray(Class<?>[]::new);
+        MethodHandle constructor = ACCESSORS.get(type).constructor(argTypes);
+        return new HandleProjection<>(type, args) {
+            @Override
+            @SuppressWarnings("unchecked")
+            public T newInstance(Object... values) {
+                try {
+                    return (T) constructor.invokeExact(values);
+                } catch (Throwable e) {
+                    throw new ExpressionException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 기본 생성자로 만들고 setter 로 대입한다. 프로퍼티 이름은 path 이름이나 as(alias) 로 정한다.
+     */
+    public static <T> FactoryExpressionBase<T> bean(Class<? extends T> type, Expression<?>... args) {
+        DtoAccessors accessors = ACCESSORS.get(type);
+        return properties(type, args, Arrays.stream(args).map(arg -> accessors.setter(propertyName(arg)))
+                .toArray(BiConsumer[]::new));
+    }
+
+    /**
+     * 기본 생성자로 만들고 필드에 직접 대입한다. setter 가 없는 DTO 용.
+     */
+    public static <T> FactoryExpressionBase<T> fields(Class<? extends T> type, Expression<?>... args) {
+        DtoAccessors accessors = ACCESSORS.get(type);
+        return properties(type, args, Arrays.stream(args).map(arg -> accessors.fieldSetter(propertyName(arg)))
+                .toArray(BiConsumer[]::new));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> FactoryExpressionBase<T> properties(Class<? extends T> type, Expression<?>[] args,
+                                                          BiConsumer<Object, Object>[] setters) {
+        Supplier<Object> noArgs = ACCESSORS.get(type).noArgsConstructor();
+        return new HandleProjection<>(type, args) {
+            @Override
+            public T newInstance(Object... values) {
+                Object instance = noArgs.get();
+                for (int i = 0; i < setters.length; i++) {
+                    if (values[i] != null) {
+                        setters[i].accept(instance, values[i]);
+                    }
+                }
+                return (T) instance;
+            }
+        };
+    }
+
+    private static String propertyName(Expression<?> arg) {
+        if (arg instanceof Operation<?> operation && operation.getOperator() == Ops.ALIAS
+                && operation.getArg(1) instanceof Path<?> alias) {
+            return alias.getMetadata().getName();
+        }
+        if (arg instanceof Path<?> path) {
+            return path.getMetadata().getName();
+        }
+        throw new IllegalArgumentException("Projection argument needs a path or an alias: " + arg);
+    }
+
+    private abstract static class HandleProjection<T> extends FactoryExpressionBase<T> {
+        private final List<Expression<?>> args;
+
+        HandleProjection(Class<? extends T> type, Expression<?>[] args) {
+            super(type);
+            this.args = List.of(args);
+        }
+
+        @Override
+        public List<Expression<?>> getArgs() {
+            return args;
+        }
+
+        @Override
+        public <R, C> R accept(Visitor<R, C> v, C context) {
+            return v.visit(this, context);
+        }
+    }
+
+    /**
+     * DTO 클래스 하나의 생성자/setter 캐시.
+     */
+    private static final class DtoAccessors {
+        private final Class<?> type;
+        private final MethodHandles.Lookup lookup;
+        private final Map<List<Class<?>>, MethodHandle> constructors = new ConcurrentHashMap<>();
+        private final Map<String, BiConsumer<Object, Object>> setters = new ConcurrentHashMap<>();
+        private final Map<String, BiConsumer<Object, Object>> fieldSetters = new ConcurrentHashMap<>();
+        private volatile Supplier<Object> noArgsConstructor;
+
+        DtoAccessors(Class<?> type) {
+            this.type = type;
+            try {
+                this.lookup = MethodHandles.privateLookupIn(type, LOOKUP);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot access " + type.getName(), e);
+            }
+        }
+
+        /**
+         * (Object[]) -> Object 형태로 맞춰 둔 생성자 핸들.
+         */
+        MethodHandle constructor(Class<?>[] argTypes) {
+            return constructors.computeIfAbsent(List.of(argTypes), key -> {
+                for (Constructor<?> candidate : type.getConstructors()) {
+                    if (accepts(candidate.getParameterTypes(), argTypes)) {
+                        try {
+                            return lookup.unreflectConstructor(candidate)
+                                    .asSpreader(Object[].class, argTypes.length)
+                                    .asType(MethodType.methodType(Object.class, Object[].class));
+                        } catch (IllegalAccessException e) {
+                            throw new IllegalArgumentException("Cannot access " + candidate, e);
+                        }
+                    }
+                }
+                throw new IllegalArgumentException("No constructor of " + type.getName() + " for " + key);
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        Supplier<Object> noArgsConstructor() {
+            Supplier<Object> supplier = noArgsConstructor;
+            if (supplier == null) {
+                try {
+                    MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                            MethodType.methodType(Supplier.class), MethodType.methodType(Object.class),
+                            constructor, MethodType.methodType(type));
+                    supplier = (Supplier<Object>) site.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    throw new IllegalArgumentException(type.getName() + " needs a no-args constructor", e);
+                }
+                noArgsConstructor = supplier;
+            }
+            return supplier;
+        }
+
+        @SuppressWarnings("unchecked")
+        BiConsumer<Object, Object> setter(String property) {
+            return setters.computeIfAbsent(property, name -> {
+                Method method = findSetter(name);
+                try {
+                    MethodHandle target = lookup.unreflect(method);
+                    Class<?> valueType = MethodType.methodType(method.getParameterTypes()[0]).wrap().returnType();
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                            MethodType.methodType(BiConsumer.class), SETTER_TYPE,
+                            target, MethodType.methodType(void.class, type, valueType));
+                    return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+                } catch (Throwable e) {
+                    throw new IllegalArgumentException("Cannot bind " + method, e);
+                }
+            });
+        }
+
+        BiConsumer<Object, Object> fieldSetter(String property) {
+            return fieldSetters.computeIfAbsent(property, name -> {
+                Field field = findField(name);
+                MethodHandle handle;
+                try {
+                    // 상위 클래스의 private 필드도 대입할 수 있도록 접근 검사를 끈다
+                    field.setAccessible(true);
+                    handle = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("Cannot access " + field, e);
+                }
+                return (target, value) -> {
+                    try {
+                        handle.invokeExact(target, value);
+                    } catch (Throwable e) {
+                        throw new ExpressionException(e.getMessage(), e);
+                    }
+                };
+            });
+        }
+
+        private Method findSetter(String property) {
+            String name = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() == 1
+                        && !Modifier.isStatic(method.getModifiers())) {
+                    return method;
+                }
+            }
+            throw new IllegalArgumentException("No setter " + name + " on " + type.getName());
+        }
+
+        private Field findField(String property) {
+            for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+                try {
+                    Field field = current.getDeclaredField(property);
+                    if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                        return field;
+                    }
+                } catch (NoSuchFieldException ignored) {
+                    // 상위 클래스에서 찾는다
+                }
+            }
+            throw new IllegalArgumentException("No field " + property + " on " + type.getName());
+        }
+
+        private static boolean accepts(Class<?>[] parameterTypes, Class<?>[] argTypes) {
+            if (parameterTypes.length != argTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Class<?> parameterType = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+                if (!parameterType.isAssignableFrom(argTypes[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
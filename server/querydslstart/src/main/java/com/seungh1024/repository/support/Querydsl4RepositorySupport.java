@@ -2,12 +2,17 @@ package com.seungh1024.repository.support;
 
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
 import com.querydsl.core.types.dsl.PathBuilder;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
@@ -17,10 +22,22 @@ import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.querydsl.SimpleEntityPathResolver;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 /**
  * Querydsl 4.x 버전에 맞춘 Querydsl 지원 라이브러리
  *
@@ -34,6 +51,11 @@ public abstract class Querydsl4RepositorySupport {
     private Querydsl querydsl;
     private EntityManager entityManager;
     private JPAQueryFactory queryFactory;
+    private PlatformTransactionManager transactionManager;
+    private Executor countQueryExecutor;
+    private Semaphore countQueryPermits;
+    private MeterRegistry meterRegistry;
+    private SortPolicy defaultSortPolicy;
     public Querydsl4RepositorySupport(Class<?> domainClass) {
         Assert.notNull(domainClass, "Domain class must not be null!");
         this.domainClass = domainClass;
@@ -49,6 +71,27 @@ public abstract class Querydsl4RepositorySupport {
         this.querydsl = new Querydsl(entityManager, new
                 PathBuilder<Object>(path.getType(), path.getMetadata()));
         this.queryFactory = new JPAQueryFactory(entityManager);
+        // 정렬 정책을 따로 정하지 않은 repository 는 id 정렬만 허용한다
+        String idName = entityInformation.getIdAttribute().getName();
+        ComparableExpressionBase<?> id = new PathBuilder<Object>(path.getType(), path.getMetadata())
+                .getComparable(idName, Comparable.class);
+        this.defaultSortPolicy = SortPolicy.builder(id).allow(idName, id).build();
+    }
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+    @Autowired
+    public void setCountQueryExecutor(@Qualifier("countQueryExecutor") Executor countQueryExecutor) {
+        this.countQueryExecutor = countQueryExecutor;
+    }
+    @Autowired
+    public void setCountQueryPermits(@Qualifier("countQueryPermits") Semaphore countQueryPermits) {
+        this.countQueryPermits = countQueryPermits;
     }
     @PostConstruct
     public void validate() {
@@ -62,6 +105,18 @@ public abstract class Querydsl4RepositorySupport {
     protected Querydsl getQuerydsl() {
         return querydsl;
     }
+    /**
+     * 클라이언트 Sort 를 ORDER BY 로 바꿀 때 쓰는 허용 목록. 기본은 id 만 허용한다.
+     */
+    protected SortPolicy getSortPolicy() {
+        return defaultSortPolicy;
+    }
+    /**
+     * content/count 쿼리의 where 를 인덱스를 쓸 수 있는 모양으로 바꿀 규칙 (lower(컬럼) -> 가상 컬럼 등). 기본은 바꾸지 않는다.
+     */
+    protected SqlFunctionRegistry getFunctionRegistry() {
+        return null;
+    }
     protected EntityManager getEntityManager() {
         return entityManager;
     }
@@ -74,19 +129,184 @@ public abstract class Querydsl4RepositorySupport {
 
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery) {
-        JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaQuery).fetch();
-        return PageableExecutionUtils.getPage(content, pageable,
-                jpaQuery::fetchCount);
+        JPAQuery jpaQuery = sargable(contentQuery.apply(getQueryFactory()));
+        // count 는 content 쿼리의 metadata 를 읽어서 만들므로 정렬/페이징이 붙기 전에 만든다
+        LongSupplier total = CountQueries.countOf(getQueryFactory(), getEntityManager(), jpaQuery);
+        List<T> content = paginate(pageable, jpaQuery).fetch();
+        return PageableExecutionUtils.getPage(content, pageable, total);
     }
     protected <T> Page<T> applyPagination(Pageable pageable,
                                           Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory,
             JPAQuery> countQuery) {
-        JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-        List<T> content = getQuerydsl().applyPagination(pageable,
-                jpaContentQuery).fetch();
-        JPAQuery<Long> countResult = countQuery.apply(getQueryFactory());
+        JPAQuery jpaContentQuery = sargable(contentQuery.apply(getQueryFactory()));
+        List<T> content = paginate(pageable, jpaContentQuery).fetch();
+        JPAQuery<Long> countResult = countQuery(countQuery);
         return PageableExecutionUtils.getPage(content, pageable,
                 countResult::fetchOne);
-    } }
\ No newline at end of file
+    }
+
+    /**
+     * content 쿼리와 count 쿼리를 동시에 실행해서 지연 시간을 합이 아니라 둘 중 긴 쪽에 가깝게 만든다.
+     * count 는 countQueryExecutor 스레드에서 별도 커넥션/EntityManager 의 읽기 전용 트랜잭션(REQUIRES_NEW)으로 실행한다.
+     * 격리 수준은 바깥 트랜잭션과 맞추지만 스냅샷은 따로 잡으므로, 그 사이에 커밋된 변경은 content 와 count 중 한쪽에만 보일 수 있다.
+     * 바깥 트랜잭션이 쓰기 트랜잭션이면(커밋 전 변경을 다른 커넥션에서 볼 수 없다) 또는 페이징하지 않으면(count 가 필요 없다) 순차 실행으로 대신한다.
+     * count 가 필요 없는 페이지(첫/마지막 페이지)면 아직 실행 전인 count 는 건너뛰고 실행 중인 count 는 JDBC Statement.cancel 로 멈춘다.
+     * <p>
+     * 호출한 쪽은 자기 커넥션을 쥔 채로 count 용 커넥션을 하나 더 기다리므로, 풀이 모자라면 count 가 커넥션을 못 받아 요청 전체가 실패할 수 있다.
+     * 그래서 동시 병렬 count 는 countQueryPermits 로 풀보다 작게 묶고 허용 수를 다 쓰고 있으면 순차 실행으로 대신한다.
+     * content 를 다 읽었는데 count 가 아직 커넥션을 못 받았으면 기다리지 않고 호출 스레드의 커넥션으로 직접 센다.
+     */
+    protected <T> Page<T> applyPaginationInParallel(Pageable pageable,
+                                                    Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory,
+            JPAQuery> countQuery) {
+        if (pageable.isUnpaged() || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            return applyPagination(pageable, contentQuery, countQuery);
+        }
+
+        if (!countQueryPermits.tryAcquire()) {
+            return applyPagination(pageable, contentQuery, countQuery);
+        }
+        TransactionTemplate countTransaction = new TransactionTemplate(transactionManager);
+        countTransaction.setReadOnly(true);
+        countTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer isolationLevel = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
+        if (isolationLevel != null) {
+            countTransaction.setIsolationLevel(isolationLevel);
+        }
+        CountTask countTask = new CountTask(countTransaction, countQuery);
+        CompletableFuture<Long> total;
+        try {
+            total = CompletableFuture.supplyAsync(countTask::run, countQueryExecutor);
+        } catch (RejectedExecutionException e) {
+            countQueryPermits.release();
+            return applyPagination(pageable, contentQuery, countQuery);
+        }
+
+        List<T> content;
+        try {
+            JPAQuery jpaContentQuery = sargable(contentQuery.apply(getQueryFactory()));
+            content = paginate(pageable, jpaContentQuery).fetch();
+        } catch (RuntimeException e) {
+            countTask.cancel();
+            throw e;
+        }
+
+        AtomicBoolean countUsed = new AtomicBoolean();
+        Page<T> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            countUsed.set(true);
+            if (countTask.takeOver()) {
+                // count 가 아직 커넥션을 못 받았다. 풀이 모자란 상태이므로 기다리지 않고 지금 커넥션으로 센다
+                return countQuery(countQuery).fetchOne();
+            }
+            return joinCount(total);
+        });
+        if (!countUsed.get()) {
+            // 첫/마지막 페이지라 count 가 필요 없었던 경우 결과를 기다리지 않고 DB 에서도 멈춘다
+            countTask.cancel();
+        }
+        return page;
+    }
+
+    /**
+     * Querydsl.applyPagination 은 어떤 Sort 속성이든 ORDER BY 로 만들므로 정렬은 SortPolicy 를 거쳐서 붙인다.
+     */
+    private <T> JPAQuery<T> paginate(Pageable pageable, JPAQuery<T> query) {
+        if (pageable.isPaged()) {
+            query.offset(pageable.getOffset());
+            query.limit(pageable.getPageSize());
+        }
+        return query.orderBy(getSortPolicy().toOrderSpecifiers(pageable.getSort(), meterRegistry,
+                getClass().getSimpleName()));
+    }
+
+    // clearWhere 는 빈 조건을 남기므로 where 가 있을 때만 바꾼다
+    private <Q extends JPAQuery<?>> Q sargable(Q query) {
+        SqlFunctionRegistry registry = getFunctionRegistry();
+        Predicate where = query.getMetadata().getWhere();
+        if (registry != null && where != null) {
+            query.getMetadata().clearWhere();
+            query.getMetadata().addWhere(registry.sargable(where));
+        }
+        return query;
+    }
+
+    private JPAQuery<Long> countQuery(Function<JPAQueryFactory, JPAQuery> countQuery) {
+        return CountQueries.pruneJoins(getQueryFactory(), sargable(countQuery.apply(getQueryFactory())));
+    }
+
+    /**
+     * countQueryExecutor 에서 실행하는 count. cancel/takeOver 는 다른 스레드(호출 스레드)에서 부른다.
+     * 커넥션을 받은 count 와 호출 스레드 중 먼저 state 를 바꾼 쪽만 count 를 실행한다.
+     * Future.cancel 은 실행 중인 JDBC 쿼리를 멈추지 못하므로 실행 중인 count 는 Session 의 cancelQuery 로 Statement.cancel 을 보낸다.
+     * 다만 STARTED 로 바뀐 뒤 Statement 를 만들기 전에 cancel 이 오면 멈출 Statement 가 없어서 count 는 끝까지 실행되고 결과만 버린다.
+     * 이렇게 남는 count 도 countQueryPermits 안에서 실행되므로 추가 커넥션 수는 늘지 않는다.
+     */
+    private final class CountTask {
+        private static final int NEW = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final TransactionTemplate transaction;
+        private final Function<JPAQueryFactory, JPAQuery> countQuery;
+        private final AtomicInteger state = new AtomicInteger(NEW);
+        private volatile Session session;
+
+        CountTask(TransactionTemplate transaction, Function<JPAQueryFactory, JPAQuery> countQuery) {
+            this.transaction = transaction;
+            this.countQuery = countQuery;
+        }
+
+        Long run() {
+            try {
+                // 호출 스레드가 이미 가져갔거나 취소했으면 커넥션을 받지 않는다
+                if (state.get() != NEW) {
+                    return null;
+                }
+                return transaction.execute(status -> {
+                    // 트랜잭션 시작 = 커넥션을 받은 뒤. session 을 보이게 한 뒤에 state 를 바꿔야 cancel 이 session 을 본다
+                    session = getEntityManager().unwrap(Session.class);
+                    if (!state.compareAndSet(NEW, STARTED)) {
+                        return null;
+                    }
+                    return countQuery(countQuery).fetchOne();
+                });
+            } finally {
+                countQueryPermits.release();
+            }
+        }
+
+        /**
+         * count 가 아직 시작 전이면 취소하고 true 를 돌려준다. 호출한 쪽이 직접 센다.
+         */
+        boolean takeOver() {
+            return state.compareAndSet(NEW, CANCELLED);
+        }
+
+        void cancel() {
+            if (state.compareAndSet(NEW, CANCELLED)) {
+                return;
+            }
+            Session current = session;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.cancelQuery();
+            } catch (RuntimeException e) {
+                // 그 사이 count 가 끝나서 Session 이 닫혔다
+            }
+        }
+    }
+
+    private static long joinCount(CompletableFuture<Long> total) {
+        try {
+            return total.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.seungh1024.repository.support;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 지금 트랜잭션이 replica 에서 읽었는지 표시한다. replica 는 primary 보다 늦을 수 있어서
+ * 쓰기 후 비운 캐시에 replica 에서 읽은 (쓰기 전) 값을 다시 넣으면 TTL 동안 그대로 남는다. 캐시는 이 표시가 있으면 넣지 않는다.
+ * 표시는 트랜잭션이 끝날 때 지운다. 안쪽 트랜잭션(REQUIRES_NEW)은 바깥 표시를 그대로 보므로 필요 이상으로 안 넣을 수는 있어도 잘못 넣지는 않는다.
+ */
+public final class ReplicaReads {
+    private static final Object KEY = ReplicaReads.class;
+
+    private ReplicaReads() {
+    }
+
+    /**
+     * ReplicationRoutingDataSource 가 replica 커넥션을 고를 때 부른다.
+     */
+    public static void markCurrentTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(KEY)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+            }
+        });
+    }
+
+    public static boolean isCurrentTransaction() {
+        return TransactionSynchronizationManager.hasResource(KEY);
+    }
+}
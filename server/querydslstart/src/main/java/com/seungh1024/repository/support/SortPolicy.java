@@ -0,0 +1,115 @@
+package com.seungh1024.repository.support;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 클라이언트가 보낸 Sort 를 허용 목록에 있는 (인덱스가 있는) 경로로만 바꾼다.
+ * <ul>
+ *     <li>허용 목록에 없는 속성(연관 경로 team.name 등): 정렬에서 빼거나, rejectDisallowed 면 IllegalArgumentException</li>
+ *     <li>ignoreCase, nulls first/last: 컬럼에 함수가 씌워져 인덱스 정렬을 못 쓰므로 옵션만 빼고 정렬한다</li>
+ *     <li>MAX_TERMS 개를 넘는 정렬: 뒤쪽은 뺀다</li>
+ *     <li>방향이 섞인 정렬(age asc, id desc 등): 인덱스를 한 방향으로 읽을 수 없어 filesort 가 되므로 첫 정렬의 방향으로 맞춘다</li>
+ * </ul>
+ * 페이징 결과가 매번 같도록 마지막에 id 를 붙인다. 방향은 첫 정렬과 같게 해서 (age, id) 인덱스를 그대로 탈 수 있게 한다.
+ * 빠지거나 바뀐 정렬은 repository.sort.rejected 카운터로 센다.
+ */
+public final class SortPolicy {
+    public static final String REJECTED_METRIC = "repository.sort.rejected";
+    private static final int MAX_TERMS = 3;
+    // 허용 목록 밖의 속성 이름은 클라이언트가 마음대로 보낼 수 있어서 태그 값으로 쓰지 않는다
+    private static final String OTHER_PROPERTY = "other";
+
+    private final ComparableExpressionBase<?> tiebreaker;
+    private final Map<String, ComparableExpressionBase<?>> allowed;
+    private final boolean rejectDisallowed;
+
+    private SortPolicy(Builder builder) {
+        this.tiebreaker = builder.tiebreaker;
+        this.allowed = Map.copyOf(builder.allowed);
+        this.rejectDisallowed = builder.rejectDisallowed;
+    }
+
+    public static Builder builder(ComparableExpressionBase<?> tiebreaker) {
+        return new Builder(tiebreaker);
+    }
+
+    /**
+     * @param meterRegistry 거절/변경된 정렬을 기록할 곳. null 이면 기록하지 않는다
+     * @param repository    메트릭 태그로 쓸 repository 이름
+     */
+    public OrderSpecifier<?>[] toOrderSpecifiers(Sort sort, MeterRegistry meterRegistry, String repository) {
+        List<OrderSpecifier<?>> orders = new ArrayList<>();
+        Boolean ascending = null;
+        boolean ordersByTiebreaker = false;
+        for (Sort.Order order : sort) {
+            ComparableExpressionBase<?> path = allowed.get(order.getProperty());
+            if (path == null) {
+                count(meterRegistry, repository, OTHER_PROPERTY, "not-allowed");
+                if (rejectDisallowed) {
+                    throw new IllegalArgumentException("Sorting by '" + order.getProperty() + "' is not allowed");
+                }
+                continue;
+            }
+            if (orders.size() == MAX_TERMS) {
+                count(meterRegistry, repository, order.getProperty(), "too-many");
+                continue;
+            }
+            if (order.isIgnoreCase()) {
+                count(meterRegistry, repository, order.getProperty(), "ignore-case");
+            }
+            if (order.getNullHandling() != Sort.NullHandling.NATIVE) {
+                count(meterRegistry, repository, order.getProperty(), "null-handling");
+            }
+            if (ascending == null) {
+                ascending = order.isAscending();
+            } else if (order.isAscending() != ascending) {
+                count(meterRegistry, repository, order.getProperty(), "mixed-direction");
+            }
+            orders.add(ascending ? path.asc() : path.desc());
+            ordersByTiebreaker |= path.equals(tiebreaker);
+        }
+        if (!ordersByTiebreaker) {
+            orders.add(ascending == null || ascending ? tiebreaker.asc() : tiebreaker.desc());
+        }
+        return orders.toArray(OrderSpecifier[]::new);
+    }
+
+    private static void count(MeterRegistry meterRegistry, String repository, String property, String reason) {
+        if (meterRegistry != null) {
+            meterRegistry.counter(REJECTED_METRIC, "repository", repository, "property", property, "reason", reason)
+                    .increment();
+        }
+    }
+
+    public static final class Builder {
+        private final ComparableExpressionBase<?> tiebreaker;
+        private final Map<String, ComparableExpressionBase<?>> allowed = new HashMap<>();
+        private boolean rejectDisallowed;
+
+        private Builder(ComparableExpressionBase<?> tiebreaker) {
+            this.tiebreaker = tiebreaker;
+        }
+
+        public Builder allow(String property, ComparableExpressionBase<?> path) {
+            allowed.put(property, path);
+            return this;
+        }
+
+        public Builder rejectDisallowed() {
+            this.rejectDisallowed = true;
+            return this;
+        }
+
+        public SortPolicy build() {
+            return new SortPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.seungh1024.repository.support;
+
+import com.querydsl.core.support.ReplaceVisitor;
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.TemplateExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.core.types.dsl.StringExpression;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Querydsl 에서 부를 DB 함수 목록과, 함수가 컬럼을 감싸서 인덱스를 못 쓰는 조건을 인덱스를 쓸 수 있는 모양으로 바꾸는 규칙.
+ * 바꾸는 규칙은 Querydsl4RepositorySupport.getFunctionRegistry 로 넘기면 페이징 쿼리(content/count)의 where 에 적용된다.
+ * <ul>
+ *     <li>등록한 함수만 function('이름', ...) 으로 만들 수 있다 (오타 난 함수가 SQL 까지 가지 않게)</li>
+ *     <li>lower(컬럼), equalsIgnoreCase: 등록한 가상 컬럼(generated column)으로 바꾼다</li>
+ *     <li>컬럼 + 상수 비교 상수 (정수): 상수 쪽으로 옮긴다. age + 10 >= 30 -> age >= 20</li>
+ *     <li>substring(컬럼, 0, n) = 길이 n 문자열: like '문자열%'</li>
+ * </ul>
+ * 바꿀 수 없는 조건은 그대로 두고, 실제 SQL 에 남은 것은 NonSargableSqlInspector 가 경고한다.
+ */
+public final class SqlFunctionRegistry {
+    private static final Pattern FUNCTION_TEMPLATE = Pattern.compile("function\\('(\\w+)',\\{0}\\)");
+    private static final Set<Operator> COMPARISONS = Set.of(Ops.EQ, Ops.NE, Ops.LT, Ops.LOE, Ops.GT, Ops.GOE);
+    private static final char LIKE_ESCAPE = '!';
+
+    private final Map<String, Class<?>> functions;
+    private final Map<GeneratedKey, String> generatedColumns;
+
+    private SqlFunctionRegistry(Builder builder) {
+        this.functions = Map.copyOf(builder.functions);
+        this.generatedColumns = Map.copyOf(builder.generatedColumns);
+    }
+
+    /**
+     * replace, lower, upper, trim, length, substring, concat 은 기본으로 등록되어 있다. (Hibernate 6 표준 함수)
+     */
+    public static Builder builder() {
+        return new Builder()
+                .function("replace", String.class)
+                .function("lower", String.class)
+                .function("upper", String.class)
+                .function("trim", String.class)
+                .function("substring", String.class)
+                .function("concat", String.class)
+                .function("length", Integer.class);
+    }
+
+    public StringExpression string(String name, Object... args) {
+        requireType(name, String.class);
+        return Expressions.stringTemplate(template(name, args.length), args);
+    }
+
+    public <T extends Number & Comparable<?>> NumberExpression<T> number(String name, Class<? extends T> type,
+                                                                          Object... args) {
+        requireType(name, type);
+        return Expressions.numberTemplate(type, template(name, args.length), args);
+    }
+
+    /**
+     * 조건을 인덱스를 쓸 수 있는 모양으로 바꾼다. 바꿀 것이 없으면 같은 조건을 돌려준다.
+     */
+    public Predicate sargable(Predicate predicate) {
+        return predicate == null ? null : (Predicate) predicate.accept(new Rewriter(), null);
+    }
+
+    private void requireType(String name, Class<?> type) {
+        Class<?> registered = functions.get(name);
+        if (registered == null) {
+            throw new IllegalArgumentException("Unregistered SQL function: " + name);
+        }
+        if (!type.isAssignableFrom(registered)) {
+            throw new IllegalArgumentException("SQL function " + name + " returns " + registered.getSimpleName());
+        }
+    }
+
+    private static String template(String name, int argCount) {
+        StringJoiner template = new StringJoiner(",", "function('" + name + "',", ")");
+        for (int i = 0; i < argCount; i++) {
+            template.add("{" + i + "}");
+        }
+        return template.toString();
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private class Rewriter extends ReplaceVisitor<Void> {
+
+        @Override
+        public Expression<?> visit(Operation<?> expr, Void context) {
+            Operator operator = expr.getOperator();
+            if (operator == Ops.LOWER) {
+                Path<String> generated = generatedColumn(expr.getArg(0));
+                if (generated != null) {
+                    return generated;
+                }
+            }
+            if (operator == Ops.EQ_IGNORE_CASE) {
+                Path<String> generated = generatedColumn(expr.getArg(0));
+                if (generated != null) {
+                    Expression<?> value = expr.getArg(1).accept(this, context);
+                    Expression<?> lowered = value instanceof Constant<?> constant
+                            ? Expressions.constant(constant.getConstant().toString().toLowerCase(Locale.ROOT))
+                            : ExpressionUtils.operation(String.class, Ops.LOWER, value);
+                    return ExpressionUtils.predicate(Ops.EQ, generated, lowered);
+                }
+            }
+            if (COMPARISONS.contains(operator)) {
+                Expression<?> moved = moveConstant(operator, expr.getArg(0), expr.getArg(1));
+                if (moved != null) {
+                    return moved;
+                }
+                if (operator == Ops.EQ) {
+                    Expression<?> prefix = prefixLike(expr.getArg(0), expr.getArg(1));
+                    if (prefix != null) {
+                        return prefix;
+                    }
+                }
+            }
+            return super.visit(expr, context);
+        }
+
+        @Override
+        public Expression<?> visit(TemplateExpression<?> expr, Void context) {
+            // Expressions.stringTemplate("function('lower',{0})", path) 도 lower(path) 와 같이 본다
+            Matcher matcher = FUNCTION_TEMPLATE.matcher(expr.getTemplate().toString().replace(" ", ""));
+            if (matcher.matches() && matcher.group(1).equalsIgnoreCase("lower")
+                    && expr.getArg(0) instanceof Expression<?> arg) {
+                Path<String> generated = generatedColumn(arg);
+                if (generated != null) {
+                    return generated;
+                }
+            }
+            return super.visit(expr, context);
+        }
+
+        // 같은 alias 아래의 가상 컬럼 path (new QMember("m") 처럼 alias 가 달라도 찾는다)
+        private Path<String> generatedColumn(Expression<?> source) {
+            if (!(source instanceof Path<?> path) || path.getMetadata().getParent() == null) {
+                return null;
+            }
+            Path<?> parent = path.getMetadata().getParent();
+            String generated = generatedColumns.get(new GeneratedKey(parent.getType(), path.getMetadata().getName()));
+            return generated != null ? Expressions.stringPath(parent, generated) : null;
+        }
+
+        /**
+         * (path + k) op c -> path op (c - k), (path - k) op c -> path op (c + k). Integer/Long 만, 넘치면 그대로 둔다.
+         */
+        private Expression<?> moveConstant(Operator operator, Expression<?> left, Expression<?> right) {
+            if (!(left instanceof Operation<?> arithmetic) || !(right instanceof Constant<?> bound)
+                    || (arithmetic.getOperator() != Ops.ADD && arithmetic.getOperator() != Ops.SUB)
+                    || !(arithmetic.getArg(0) instanceof Path<?> path)
+                    || !(arithmetic.getArg(1) instanceof Constant<?> offset)) {
+                return null;
+            }
+            Object moved = shift(bound.getConstant(), offset.getConstant(), arithmetic.getOperator() == Ops.ADD);
+            return moved == null ? null : ExpressionUtils.predicate(operator, path, Expressions.constant(moved));
+        }
+
+        private Object shift(Object bound, Object offset, boolean subtract) {
+            try {
+                if (bound instanceof Integer b && offset instanceof Integer o) {
+                    return subtract ? Math.subtractExact(b, o) : Math.addExact(b, o);
+                }
+                if (bound instanceof Long b && offset instanceof Long o) {
+                    return subtract ? Math.subtractExact(b, o) : Math.addExact(b, o);
+                }
+            } catch (ArithmeticException e) {
+                return null;
+            }
+            return null;
+        }
+
+        /**
+         * substring(path, 0, n) = 길이 n 문자열 -> path like '문자열%'
+         */
+        private Expression<?> prefixLike(Expression<?> left, Expression<?> right) {
+            if (left instanceof Operation<?> substring && substring.getOperator() == Ops.SUBSTR_2ARGS
+                    && substring.getArg(0) instanceof Path<?> path
+                    && substring.getArg(1) instanceof Constant<?> begin && Integer.valueOf(0).equals(begin.getConstant())
+                    && substring.getArg(2) instanceof Constant<?> end
+                    && right instanceof Constant<?> value && value.getConstant() instanceof String prefix
+                    && end.getConstant().equals(prefix.length())) {
+                return ExpressionUtils.predicate(Ops.LIKE_ESCAPE, path,
+                        Expressions.constant(escapeLike(prefix) + "%"), Expressions.constant(LIKE_ESCAPE));
+            }
+            return null;
+        }
+    }
+
+    private record GeneratedKey(Class<?> entity, String property) {
+    }
+
+    public static final class Builder {
+        private final Map<String, Class<?>> functions = new HashMap<>();
+        private final Map<GeneratedKey, String> generatedColumns = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder function(String name, Class<?> returnType) {
+            functions.put(name, returnType);
+            return this;
+        }
+
+        /**
+         * lower(source) 를 DB 가 계산해 두는 가상 컬럼. 이 컬럼에 인덱스가 있어야 의미가 있다.
+         */
+        public Builder lowerColumn(Path<String> source, Path<String> generated) {
+            generatedColumns.put(new GeneratedKey(source.getMetadata().getParent().getType(),
+                    source.getMetadata().getName()), generated.getMetadata().getName());
+            return this;
+        }
+
+        public SqlFunctionRegistry build() {
+            return new SqlFunctionRegistry(this);
+        }
+    }
+}
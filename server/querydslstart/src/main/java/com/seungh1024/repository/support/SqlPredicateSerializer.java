@@ -0,0 +1,131 @@
+package com.seungh1024.repository.support;
+
+import com.querydsl.core.support.SerializerBase;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.PathMetadata;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.jpa.JPQLTemplates;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Querydsl 조건식을 JDBC(NamedParameterJdbcTemplate)용 SQL 조건으로 바꾼다. JPQL 로 만든 조건과 같은 식을 SQL 로 재사용할 때 쓴다.
+ * <ul>
+ *     <li>path 는 alias.컬럼. 컬럼 이름은 @Column/@JoinColumn 의 name, 없으면 필드 이름을 snake_case 로 (Spring Boot 기본 naming)</li>
+ *     <li>연관관계의 id(member.team.id)는 join 없이 FK 컬럼(m.team_id)으로 쓴다</li>
+ *     <li>Param 은 :이름, 그 밖의 값은 :c1, :c2 ... 로 쓴다. 컬렉션 값은 in (:이름) 처럼 괄호로 감싼다</li>
+ * </ul>
+ * 연산자는 JPQL 과 SQL 문법이 같은 것(=, 비교, like escape, in, and/or)만 쓸 수 있다.
+ */
+public final class SqlPredicateSerializer extends SerializerBase<SqlPredicateSerializer> {
+    private final Map<Path<?>, String> aliases;
+
+    /**
+     * @param aliases Querydsl 엔티티 path(QMember.member 등) -> SQL 테이블 alias
+     */
+    public SqlPredicateSerializer(Map<? extends Path<?>, String> aliases) {
+        super(JPQLTemplates.DEFAULT);
+        this.aliases = Map.copyOf(aliases);
+        setParamPrefix("");
+        setConstantPrefix("c");
+    }
+
+    @Override
+    public Void visit(Path<?> path, Void context) {
+        append(column(path));
+        return null;
+    }
+
+    @Override
+    public Void visit(ParamExpression<?> param, Void context) {
+        boolean wrap = Collection.class.isAssignableFrom(param.getType());
+        if (wrap) {
+            append("(");
+        }
+        super.visit(param, context);
+        if (wrap) {
+            append(")");
+        }
+        return null;
+    }
+
+    // 서브쿼리는 JPQL 과 SQL 문법이 달라서 지원하지 않는다
+    @Override
+    public Void visit(SubQueryExpression<?> query, Void context) {
+        throw new UnsupportedOperationException("Subqueries cannot be serialized to SQL: " + query);
+    }
+
+    @Override
+    public void visitConstant(Object constant) {
+        boolean wrap = constant instanceof Collection;
+        if (wrap) {
+            append("(");
+        }
+        super.visitConstant(constant);
+        if (wrap) {
+            append(")");
+        }
+    }
+
+    @Override
+    protected void serializeConstant(int parameterIndex, String constantLabel) {
+        append(":").append(constantLabel);
+    }
+
+    /**
+     * Param 이 아닌 값의 파라미터 이름 -> 값.
+     */
+    public Map<String, Object> getConstantValues() {
+        Map<String, Object> values = new HashMap<>();
+        getConstantToLabel().forEach((constant, label) -> {
+            if (!(constant instanceof ParamExpression<?>)) {
+                values.put(label, constant);
+            }
+        });
+        return values;
+    }
+
+    private String column(Path<?> path) {
+        PathMetadata metadata = path.getMetadata();
+        Path<?> parent = metadata.getParent();
+        String alias = parent != null ? aliases.get(parent) : null;
+        if (alias != null) {
+            return alias + "." + columnName(field(parent.getType(), metadata.getName()));
+        }
+        Path<?> owner = parent != null ? parent.getMetadata().getParent() : null;
+        String ownerAlias = owner != null ? aliases.get(owner) : null;
+        if (ownerAlias != null && field(parent.getType(), metadata.getName()).isAnnotationPresent(Id.class)) {
+            return ownerAlias + "." + columnName(field(owner.getType(), parent.getMetadata().getName()));
+        }
+        throw new IllegalArgumentException("Cannot map path to a SQL column: " + path);
+    }
+
+    private static Field field(Class<?> type, String name) {
+        Field field = ReflectionUtils.findField(type, name);
+        if (field == null) {
+            throw new IllegalArgumentException("No field " + name + " in " + type.getName());
+        }
+        return field;
+    }
+
+    private static String columnName(Field field) {
+        Column column = field.getAnnotation(Column.class);
+        if (column != null && !column.name().isEmpty()) {
+            return column.name();
+        }
+        JoinColumn joinColumn = field.getAnnotation(JoinColumn.class);
+        if (joinColumn != null && !joinColumn.name().isEmpty()) {
+            return joinColumn.name();
+        }
+        return field.getName().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+    }
+}
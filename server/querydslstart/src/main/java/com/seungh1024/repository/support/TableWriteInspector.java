@@ -0,0 +1,38 @@
+package com.seungh1024.repository.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Hibernate 가 실행하는 모든 SQL 을 보고 insert/update/delete 대상 테이블에 등록된 리스너를 호출한다.
+ * em.persist 뿐 아니라 Querydsl 벌크 update/delete 도 여기를 지나가므로 캐시 무효화 지점으로 쓴다.
+ */
+@Component
+public class TableWriteInspector implements StatementInspector {
+    private static final Pattern LEADING_COMMENT = Pattern.compile("^\\s*/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern WRITE = Pattern.compile("^\\s*(?:insert\\s+into|update|delete\\s+from)\\s+([a-z0-9_]+)");
+
+    private final Map<String, List<Runnable>> listeners = new ConcurrentHashMap<>();
+
+    public void addListener(String table, Runnable onWrite) {
+        listeners.computeIfAbsent(table.toLowerCase(Locale.ROOT), key -> new CopyOnWriteArrayList<>()).add(onWrite);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        String statement = LEADING_COMMENT.matcher(sql).replaceFirst("").toLowerCase(Locale.ROOT);
+        Matcher matcher = WRITE.matcher(statement);
+        if (matcher.find()) {
+            listeners.getOrDefault(matcher.group(1), List.of()).forEach(Runnable::run);
+        }
+        return sql;
+    }
+}
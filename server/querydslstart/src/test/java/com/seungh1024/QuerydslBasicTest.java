@@ -11,14 +11,26 @@ import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.core.types.dsl.CaseBuilder;
 import com.querydsl.core.types.dsl.Expressions;
 import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import com.seungh1024.dto.MemberDto;
+import com.seungh1024.dto.MemberTeamDto;
 import com.seungh1024.dto.QMemberDto;
 import com.seungh1024.dto.UserDto;
 import com.seungh1024.entity.Member;
 import com.seungh1024.entity.QMember;
 import com.seungh1024.entity.QTeam;
 import com.seungh1024.entity.Team;
+import com.seungh1024.monitor.NonSargableSqlInspector;
+import com.seungh1024.monitor.QueryGuard;
+import com.seungh1024.repository.MemberBulkOperations;
+import com.seungh1024.repository.MemberFunctions;
+import com.seungh1024.repository.TeamStatsRepository;
+import com.seungh1024.repository.UsernameTrigramIndex;
+import com.seungh1024.repository.support.AggregateSubqueries;
+import com.seungh1024.repository.support.CountQueries;
+import com.seungh1024.repository.support.DtoProjections;
+import com.seungh1024.repository.support.SqlFunctionRegistry;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.PersistenceUnit;
@@ -29,8 +41,11 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Commit;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.seungh1024.entity.QMember.*;
@@ -41,6 +56,16 @@ import static com.seungh1024.entity.QTeam.team;
 public class QuerydslBasicTest{
     @Autowired
     EntityManager em;
+    @Autowired
+    QueryGuard queryGuard;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+    @Autowired
+    UsernameTrigramIndex usernameTrigramIndex;
+    @Autowired
+    NonSargableSqlInspector nonSargableSqlInspector;
 
     JPAQueryFactory queryFactory;
 
@@ -367,6 +392,46 @@ public class QuerydslBasicTest{
 
     }
 
+    @Test
+    public void subQueryJoinGrouped(){
+        QMember subMember = new QMember("subMember");
+        // 팀에서 나이가 가장 많은 회원
+        JPAQuery<Member> oldestInTeam = queryFactory
+                .selectFrom(member)
+                .where(member.age.eq(JPAExpressions.select(subMember.age.max()).from(subMember)
+                        .where(subMember.team.eq(member.team))));
+        // 팀 평균 나이 이상인 회원
+        JPAQuery<Member> overTeamAvg = queryFactory
+                .selectFrom(member)
+                .where(member.age.goe(JPAExpressions.select(subMember.age.avg()).from(subMember)
+                        .where(subMember.team.eq(member.team), subMember.username.isNotNull())));
+        // 회원마다 팀 평균 나이. 팀이 없으면 null
+        JPAQuery<Tuple> teamAvgPerRow = queryFactory
+                .select(member.username, JPAExpressions.select(subMember.age.avg()).from(subMember)
+                        .where(subMember.team.eq(member.team)))
+                .from(member);
+        List<Member> expectedOldest = oldestInTeam.clone().fetch();
+        List<Member> expectedOverAvg = overTeamAvg.clone().fetch();
+        List<Tuple> expectedAvgPerRow = teamAvgPerRow.clone().fetch();
+
+        // 상관 서브쿼리가 팀별 group by derived table join 으로 바뀌어도 결과는 같다
+        Assertions.assertThat(AggregateSubqueries.joinGrouped(em, oldestInTeam).toString())
+                .contains("left join (select subMember.team.id as groupKey, max(subMember.age) as aggregate")
+                .doesNotContain("subMember.team = member1.team");
+        Assertions.assertThat(oldestInTeam.fetch()).extracting("username").containsExactlyInAnyOrder("member2", "member4");
+        Assertions.assertThat(oldestInTeam.fetch()).containsExactlyInAnyOrderElementsOf(expectedOldest);
+        Assertions.assertThat(AggregateSubqueries.joinGrouped(em, overTeamAvg).fetch())
+                .containsExactlyInAnyOrderElementsOf(expectedOverAvg);
+        Assertions.assertThat(AggregateSubqueries.joinGrouped(em, teamAvgPerRow).fetch())
+                .containsExactlyInAnyOrderElementsOf(expectedAvgPerRow);
+
+        // 바깥과 상관없는 서브쿼리는 MySQL 이 한 번만 실행하므로 그대로 둔다
+        JPAQuery<Member> uncorrelated = queryFactory
+                .selectFrom(member)
+                .where(member.age.eq(JPAExpressions.select(subMember.age.max()).from(subMember)));
+        Assertions.assertThat(AggregateSubqueries.joinGrouped(em, uncorrelated).toString()).doesNotContain("group by");
+    }
+
     @Test
     public void basicCase(){
         List<String> result = queryFactory
@@ -512,6 +577,35 @@ public class QuerydslBasicTest{
         }
     }
 
+    @Test
+    public void findDtoByMethodHandle(){
+        List<UserDto> bySetter = queryFactory
+                .select(DtoProjections.bean(UserDto.class, member.username.as("name"), member.age))
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch();
+        Assertions.assertThat(bySetter).extracting(UserDto::getName, UserDto::getAge)
+                .containsExactly(Assertions.tuple("member1", 10));
+
+        List<UserDto> byField = queryFactory
+                .select(DtoProjections.fields(UserDto.class, member.username.as("name"), member.age))
+                .from(member)
+                .where(member.username.eq("member2"))
+                .fetch();
+        Assertions.assertThat(byField).extracting(UserDto::getName, UserDto::getAge)
+                .containsExactly(Assertions.tuple("member2", 20));
+
+        List<MemberTeamDto> byConstructor = queryFactory
+                .select(DtoProjections.constructor(MemberTeamDto.class,
+                        member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .join(member.team, team)
+                .where(member.username.eq("member3"))
+                .fetch();
+        Assertions.assertThat(byConstructor).extracting(MemberTeamDto::getUsername, MemberTeamDto::getTeamName)
+                .containsExactly(Assertions.tuple("member3", "teamB"));
+    }
+
     @Test
     public void findDtoByQueryProjection(){
         List<MemberDto> members = queryFactory
@@ -578,6 +672,117 @@ public class QuerydslBasicTest{
         return ageParam != null ? member.age.eq(ageParam) :null;
     }
 
+    @Test
+    public void lazyTeamBatchFetch(){
+        // QueryGuard 기준(max-same-statement: 10)보다 팀이 많아야 N+1 일 때 실패한다
+        for (int i = 0; i < 15; i++) {
+            Team extraTeam = new Team("extraTeam" + i);
+            em.persist(extraTeam);
+            em.persist(new Member("extraMember" + i, 50, extraTeam));
+        }
+        em.flush();
+        em.clear();
+        em.getEntityManagerFactory().getCache().evictAll();
+
+        // 팀 수만큼 select 가 나가지 않고 IN 절 한 번으로 묶여야 한다 (N+1 이면 QueryGuard 가 실패시킨다)
+        try (QueryGuard.Scope scope = queryGuard.open("lazyTeamBatchFetch")) {
+            List<Member> members = queryFactory
+                    .selectFrom(member)
+                    .fetch();
+            for (Member findMember : members) {
+                if (findMember.getTeam() != null) {
+                    findMember.getTeam().getName();
+                }
+            }
+            Assertions.assertThat(scope.totalCount()).isLessThanOrEqualTo(2);
+        }
+    }
+
+    @Test
+    public void countQueryPruneJoin(){
+        JPAQuery<Long> countQuery = queryFactory
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.age.goe(20));
+
+        JPAQuery<Long> pruned = CountQueries.pruneJoins(queryFactory, countQuery);
+        Assertions.assertThat(pruned.toString()).doesNotContain("join");
+        Assertions.assertThat(pruned.fetchOne()).isEqualTo(countQuery.fetchOne());
+
+        // where 에서 join alias 를 쓰면 남겨둔다
+        JPAQuery<Long> teamFiltered = CountQueries.pruneJoins(queryFactory, queryFactory
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(team.name.eq("teamA")));
+        Assertions.assertThat(teamFiltered.toString()).contains("left join");
+        Assertions.assertThat(teamFiltered.fetchOne()).isEqualTo(2L);
+    }
+
+    @Test
+    public void countOfContentQuery(){
+        // fetch join, order by 가 있는 content 쿼리
+        JPAQuery<Member> fetchJoined = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(member.age.goe(20))
+                .orderBy(member.age.desc());
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, fetchJoined).getAsLong()).isEqualTo(6L);
+
+        // group by 는 그룹 수를 센다
+        JPAQuery<Tuple> grouped = queryFactory
+                .select(team.name, member.age.avg())
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team.name);
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, grouped).getAsLong()).isEqualTo(2L);
+
+        JPAQuery<Tuple> having = grouped.clone().having(member.age.avg().gt(20));
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, having).getAsLong()).isEqualTo(1L);
+
+        JPAQuery<Team> groupedByEntity = queryFactory
+                .select(team)
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team);
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, groupedByEntity).getAsLong()).isEqualTo(2L);
+
+        JPAQuery<Integer> distinct = queryFactory
+                .select(member.age).distinct()
+                .from(member);
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, distinct).getAsLong()).isEqualTo(5L);
+
+        // null 도 한 값으로 센다 (count(distinct) 는 null 을 빼고 센다)
+        JPAQuery<String> distinctNullable = queryFactory
+                .select(member.username).distinct()
+                .from(member);
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, distinctNullable).getAsLong())
+                .isEqualTo(distinctNullable.fetch().size());
+
+        JPAQuery<Team> groupedByLeftJoin = queryFactory
+                .select(team)
+                .from(member)
+                .leftJoin(member.team, team)
+                .groupBy(team);
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, groupedByLeftJoin).getAsLong()).isEqualTo(3L);
+
+        JPAQuery<Long> distinctId = queryFactory
+                .select(member.id).distinct()
+                .from(member);
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, distinctId).getAsLong()).isEqualTo(7L);
+
+        // 같은 모양이면 캐시한 count JPQL 에 상수만 다시 넣는다
+        JPAQuery<Tuple> groupedOver = grouped.clone().where(member.age.goe(30)).having(member.age.max().gt(40));
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, groupedOver).getAsLong())
+                .isEqualTo(groupedOver.fetch().size());
+        long hits = CountQueries.getPlanHitCount();
+        JPAQuery<Tuple> groupedOverOther = grouped.clone().where(member.age.goe(10)).having(member.age.max().gt(20));
+        Assertions.assertThat(CountQueries.countOf(queryFactory, em, groupedOverOther).getAsLong())
+                .isEqualTo(groupedOverOther.fetch().size());
+        Assertions.assertThat(CountQueries.getPlanHitCount()).isEqualTo(hits + 1);
+    }
+
     private BooleanExpression allEq(String usernameParam, Integer ageParam){
         return usernameEq(usernameParam).and(ageEq(ageParam));
     }
@@ -626,6 +831,36 @@ public class QuerydslBasicTest{
         }
     }
 
+    @Test
+    public void bulkInChunks(){
+        for(int i = 1; i <= 5; i++){
+            em.persist(new Member("bulk" + i, i));
+        }
+        em.flush();
+        Member loaded = queryFactory.selectFrom(member).where(member.username.eq("bulk2")).fetchOne();
+
+        MemberBulkOperations bulkOperations = new MemberBulkOperations(em, transactionManager, teamStatsRepository,
+                usernameTrigramIndex, 2, Duration.ZERO);
+        List<MemberBulkOperations.Progress> progress = new ArrayList<>();
+        long updated = bulkOperations.update(
+                member.username.startsWith("bulk").and(member.age.goe(2)),
+                clause -> clause.set(member.age, member.age.add(10)),
+                progress::add);
+
+        // bulk2 ~ bulk5 id 4개를 2개씩
+        Assertions.assertThat(updated).isEqualTo(4);
+        Assertions.assertThat(progress).hasSize(2);
+        Assertions.assertThat(progress.get(1).affectedRows()).isEqualTo(4);
+        // 영속성 컨텍스트를 비워서 이전에 읽은 엔티티가 남지 않는다
+        Assertions.assertThat(em.contains(loaded)).isFalse();
+        Assertions.assertThat(queryFactory.select(member.age).from(member)
+                .where(member.username.startsWith("bulk")).orderBy(member.age.asc()).fetch())
+                .containsExactly(1, 12, 13, 14, 15);
+
+        long deleted = bulkOperations.delete(member.username.startsWith("bulk"), p -> {});
+        Assertions.assertThat(deleted).isEqualTo(5);
+    }
+
     @Test
     public void sqlFunction(){
         List<String> result = queryFactory
@@ -663,4 +898,54 @@ public class QuerydslBasicTest{
             System.out.println("s = "+s);
         }
     }
+
+    @Test
+    public void sargableRewrite(){
+        SqlFunctionRegistry registry = MemberFunctions.REGISTRY;
+
+        // lower(username) -> username_lower 가상 컬럼
+        Predicate lowered = member.username.lower().eq("member1");
+        Assertions.assertThat(registry.sargable(lowered).toString()).doesNotContain("lower(");
+        Assertions.assertThat(queryFactory.selectFrom(member).where(registry.sargable(lowered)).fetch())
+                .containsExactlyInAnyOrderElementsOf(queryFactory.selectFrom(member).where(lowered).fetch());
+        Predicate ignoreCase = member.username.equalsIgnoreCase("MEMBER1");
+        Assertions.assertThat(queryFactory.selectFrom(member).where(registry.sargable(ignoreCase)).fetch())
+                .containsExactlyInAnyOrderElementsOf(queryFactory.selectFrom(member).where(ignoreCase).fetch());
+
+        // 상수 쪽으로 옮기기, substring 앞부분 비교 -> like
+        Assertions.assertThat(registry.sargable(member.age.add(10).goe(30))).isEqualTo(member.age.goe(20));
+        Predicate substring = member.username.substring(0, 6).eq("member");
+        Assertions.assertThat(registry.sargable(substring).toString()).contains("like");
+        Assertions.assertThat(queryFactory.selectFrom(member).where(registry.sargable(substring)).fetch())
+                .containsExactlyInAnyOrderElementsOf(queryFactory.selectFrom(member).where(substring).fetch());
+
+        // 등록한 함수만 부를 수 있다
+        Assertions.assertThat(queryFactory
+                .select(registry.string("replace", member.username, "member", "M"))
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch()).containsOnly("M1");
+        Assertions.assertThatThrownBy(() -> registry.string("no_such_function", member.username))
+                .isInstanceOf(IllegalArgumentException.class);
+        Assertions.assertThatThrownBy(() -> registry.number("replace", Integer.class, member.username, "a", "b"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        Assertions.assertThat(nonSargableSqlInspector.reasons(
+                "select m1_0.username from member m1_0 where lower(m1_0.username)=?")).containsExactly("function");
+        Assertions.assertThat(nonSargableSqlInspector.reasons(
+                "select m1_0.username from member m1_0 where m1_0.username_lower=?")).isEmpty();
+        // where 절만 본다. 정렬, group by, 서브쿼리 안의 함수는 경고하지 않는다
+        Assertions.assertThat(nonSargableSqlInspector.reasons(
+                "select m1_0.username from member m1_0 where m1_0.age>? order by lower(m1_0.username)")).isEmpty();
+        Assertions.assertThat(nonSargableSqlInspector.reasons(
+                "select m1_0.team_id,count(1) from member m1_0 where m1_0.age>? group by m1_0.team_id"
+                        + " having count(1)+1>?")).isEmpty();
+        Assertions.assertThat(nonSargableSqlInspector.reasons(
+                "select m1_0.username from member m1_0 where m1_0.age=(select max(m2_0.age) from member m2_0"
+                        + " where lower(m2_0.username)=?) and m1_0.team_id=?")).isEmpty();
+        Assertions.assertThat(nonSargableSqlInspector.reasons(
+                "select (select max(m2_0.age) from member m2_0 where m2_0.age+1>?) from member m1_0"
+                        + " where lower(m1_0.username)=? and m1_0.age in (select m3_0.age from member m3_0)"))
+                .containsExactly("function");
+    }
 }
@@ -0,0 +1,116 @@
+package com.seungh1024.config;
+
+import com.seungh1024.dto.MemberSearchCondition;
+import com.seungh1024.repository.MemberCountCache;
+import com.seungh1024.repository.support.ReplicaReads;
+import com.seungh1024.repository.support.TableWriteInspector;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * primary/replica 대신 H2 인메모리 DB 두 개로 라우팅을 확인한다.
+ */
+class ReplicationRoutingDataSourceTest {
+    private final DataSource replica = h2("replica");
+
+    @Test
+    public void readOnlyTransactionGoesToReplica(){
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "select 0 as seconds_behind", "seconds_behind",
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+        monitor.check();
+        Assertions.assertThat(monitor.isReplicaUsable()).isTrue();
+
+        DataSource dataSource = routing(monitor);
+        Assertions.assertThat(nodeName(dataSource, true)).isEqualTo("replica");
+        Assertions.assertThat(nodeName(dataSource, false)).isEqualTo("primary");
+        // 트랜잭션 밖
+        Assertions.assertThat(new JdbcTemplate(dataSource).queryForObject("select name from node", String.class))
+                .isEqualTo("primary");
+    }
+
+    @Test
+    public void laggingReplicaFallsBackToPrimary(){
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "select 30 as seconds_behind", "seconds_behind",
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+        monitor.check();
+        Assertions.assertThat(monitor.isReplicaUsable()).isFalse();
+        Assertions.assertThat(nodeName(routing(monitor), true)).isEqualTo("primary");
+
+        // 상태 확인 쿼리가 실패해도 primary
+        ReplicaLagMonitor broken = new ReplicaLagMonitor(replica, "select seconds_behind from no_such_table", "seconds_behind",
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+        broken.check();
+        Assertions.assertThat(nodeName(routing(broken), true)).isEqualTo("primary");
+    }
+
+    @Test
+    public void replicaReadsAreNotCached(){
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "select 0 as seconds_behind", "seconds_behind",
+                Duration.ofSeconds(5), Duration.ofSeconds(1));
+        monitor.check();
+        DataSource dataSource = routing(monitor);
+        MemberCountCache countCache = new MemberCountCache(new TableWriteInspector(), Duration.ofMinutes(1), 10);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        AtomicInteger loads = new AtomicInteger();
+
+        // replica 는 쓰기보다 늦을 수 있으므로 replica 에서 읽은 count 는 다음 조회에 쓰지 않는다
+        Assertions.assertThat(countIn(dataSource, true, countCache, condition, loads)).isEqualTo("replica");
+        Assertions.assertThat(countIn(dataSource, true, countCache, condition, loads)).isEqualTo("replica");
+        Assertions.assertThat(loads.get()).isEqualTo(2);
+        Assertions.assertThat(ReplicaReads.isCurrentTransaction()).isFalse();
+
+        // primary 에서 읽은 count 는 캐시된다
+        Assertions.assertThat(countIn(dataSource, false, countCache, condition, loads)).isEqualTo("primary");
+        countIn(dataSource, false, countCache, condition, loads);
+        Assertions.assertThat(loads.get()).isEqualTo(3);
+    }
+
+    // count 를 읽은 노드 이름을 돌려준다 (캐시에서 꺼냈으면 null)
+    private static String countIn(DataSource dataSource, boolean readOnly, MemberCountCache countCache,
+                                  MemberSearchCondition condition, AtomicInteger loads) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        return transactionTemplate.execute(status -> {
+            String[] node = new String[1];
+            countCache.getOrLoad(condition, () -> {
+                loads.incrementAndGet();
+                node[0] = jdbcTemplate.queryForObject("select name from node", String.class);
+                return 1;
+            });
+            return node[0];
+        });
+    }
+
+    private static DataSource routing(ReplicaLagMonitor monitor) {
+        ReplicationRoutingDataSource routing = new ReplicationRoutingDataSource(h2("primary"), h2("replica"), monitor);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    private static String nodeName(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        return transactionTemplate.execute(status -> jdbcTemplate.queryForObject("select name from node", String.class));
+    }
+
+    private static DataSource h2(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists node (name varchar(20))");
+        jdbcTemplate.update("delete from node");
+        jdbcTemplate.update("insert into node values (?)", name);
+        return dataSource;
+    }
+}
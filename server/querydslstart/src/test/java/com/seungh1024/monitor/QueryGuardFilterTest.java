@@ -0,0 +1,86 @@
+package com.seungh1024.monitor;
+
+import jakarta.persistence.EntityManager;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 테스트 설정은 fail-on-violation: true, max-same-statement: 10
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Import(QueryGuardFilterTest.QueryController.class)
+class QueryGuardFilterTest {
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void nPlusOneRequestFails() throws Exception {
+        mockMvc.perform(get("/query-guard-test/few"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("3"));
+
+        // 응답을 쓰기 전에 확인하므로 요청 자체가 실패한다
+        Assertions.assertThatThrownBy(() -> mockMvc.perform(get("/query-guard-test/many")))
+                .hasStackTraceContaining("Possible N+1");
+    }
+
+    @Test
+    public void streamingQueriesAreCounted() throws Exception {
+        // StreamingResponseBody 는 비동기 스레드에서 실행되지만 같은 요청으로 센다
+        MvcResult result = mockMvc.perform(get("/query-guard-test/streaming"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        Assertions.assertThatThrownBy(() -> mockMvc.perform(asyncDispatch(result)))
+                .hasStackTraceContaining("Possible N+1");
+    }
+
+    @RestController
+    static class QueryController {
+        private final EntityManager em;
+
+        QueryController(EntityManager em) {
+            this.em = em;
+        }
+
+        @GetMapping("/query-guard-test/few")
+        public int few() {
+            return select(3);
+        }
+
+        @GetMapping("/query-guard-test/many")
+        public int many() {
+            return select(12);
+        }
+
+        @GetMapping("/query-guard-test/streaming")
+        public StreamingResponseBody streaming() {
+            return out -> out.write(String.valueOf(select(12)).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // 값만 다른 SQL 은 같은 모양으로 센다
+        private int select(int times) {
+            for (int i = 1; i <= times; i++) {
+                em.createNativeQuery("select " + i).getSingleResult();
+            }
+            return times;
+        }
+    }
+}
@@ -83,5 +83,24 @@ class MemberJpaRepositoryTest {
 
     }
 
+    @Test
+    public void searchByTeamNameCacheTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        Assertions.assertThat(memberJpaRepository.searchByParam(condition)).extracting("username").containsExactly("member1");
+
+        // 같은 이름의 팀이 추가되면 이름 -> id 캐시가 비워져서 새 팀도 조회된다
+        Team otherTeamA = new Team("teamA");
+        em.persist(otherTeamA);
+        em.persist(new Member("member2",20,otherTeamA));
+        Assertions.assertThat(memberJpaRepository.searchByParam(condition)).extracting("username").containsExactlyInAnyOrder("member1","member2");
+        // BooleanBuilder 버전도 같은 팀 id 조건으로 거른다
+        Assertions.assertThat(memberJpaRepository.searchByBuilder(condition)).extracting("username").containsExactlyInAnyOrder("member1","member2");
+    }
+
 
 }
\ No newline at end of file
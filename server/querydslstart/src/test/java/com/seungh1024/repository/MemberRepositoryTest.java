@@ -1,21 +1,47 @@
 package com.seungh1024.repository;
 
+import com.seungh1024.dto.CursorSlice;
 import com.seungh1024.dto.MemberSearchCondition;
 import com.seungh1024.dto.MemberTeamDto;
+import com.seungh1024.dto.MemberTeamRecord;
+import com.seungh1024.dto.TeamStatsDto;
+import com.seungh1024.dto.UsernameMatch;
 import com.seungh1024.entity.Member;
 import com.seungh1024.entity.QMember;
 import com.seungh1024.entity.Team;
+import com.seungh1024.monitor.IndexAdvisor;
+import com.seungh1024.monitor.NonSargableSqlInspector;
+import com.seungh1024.monitor.QueryGuard;
+import com.seungh1024.repository.support.SortPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.persistence.EntityManager;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.annotation.Commit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static com.seungh1024.entity.QMember.member;
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +53,30 @@ class MemberRepositoryTest {
     EntityManager em;
     @Autowired
     MemberRepository memberRepository;
+    @Autowired
+    MemberBulkRepository memberBulkRepository;
+    @Autowired
+    MemberSearchTemplates memberSearchTemplates;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    IndexAdvisor indexAdvisor;
+    @Autowired
+    MemberRecordRepository memberRecordRepository;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    QueryGuard queryGuard;
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+    @Autowired
+    MemberBulkOperations memberBulkOperations;
+    @Autowired
+    MemberTestRepository memberTestRepository;
+    @Autowired
+    Semaphore countQueryPermits;
+    @Autowired
+    TeamIdCache teamIdCache;
     @Test
     public void basicTest(){
         Member member = new Member("member1",10);
@@ -74,6 +124,52 @@ class MemberRepositoryTest {
 
     }
 
+    @Test
+    public void repositoryMetricsTest(){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        condition.setAgeGoe(10);
+        memberRepository.searchPage(condition, PageRequest.of(0, 10));
+
+        Timer methodTimer = meterRegistry.find("repository.method")
+                .tags("repository", "MemberRepository", "method", "searchPage", "condition", "username+ageGoe")
+                .timer();
+        Assertions.assertThat(methodTimer).isNotNull();
+        Assertions.assertThat(methodTimer.count()).isGreaterThanOrEqualTo(1);
+        Assertions.assertThat(meterRegistry.find("repository.query").tags("part", "content").timer()).isNotNull();
+    }
+
+    @Test
+    public void searchTemplateCacheTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+
+        MemberSearchCondition first = new MemberSearchCondition();
+        first.setTeamName("teamA");
+        first.setAgeGoe(15);
+        MemberSearchCondition second = new MemberSearchCondition();
+        second.setTeamName("teamA");
+        second.setAgeGoe(25);
+
+        memberRepository.search(first);
+        long hits = memberSearchTemplates.getHitCount();
+        long misses = memberSearchTemplates.getMissCount();
+
+        // 값만 다르고 조건 조합이 같으면 캐시된 쿼리를 그대로 쓴다
+        List<MemberTeamDto> result = memberRepository.search(second);
+        Assertions.assertThat(result).isEmpty();
+        Assertions.assertThat(memberSearchTemplates.getHitCount()).isEqualTo(hits + 1);
+        Assertions.assertThat(memberSearchTemplates.getMissCount()).isEqualTo(misses);
+        Assertions.assertThat(memberRepository.search(first)).extracting("username").containsExactly("member2");
+
+        // JDBC 용 SQL 도 같은 조건식에서 만든다
+        MemberSearchTemplates.SqlSearch sql = memberSearchTemplates.toSql(first);
+        Assertions.assertThat(sql.sql()).endsWith(" where m.team_id in (:teamIds) and m.age >= :ageGoe");
+        Assertions.assertThat(sql.params()).containsEntry("teamIds", List.of(teamA.getId())).containsEntry("ageGoe", 15);
+    }
+
     @Test
     @Commit
     public void searchPageSimple(){
@@ -103,6 +199,118 @@ class MemberRepositoryTest {
         Assertions.assertThat(result.getContent()).extracting("username").containsExactly("member1","member2","member3");
     }
 
+    @Test
+    public void bulkSaveAllTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        List<Member> members = new ArrayList<>();
+        for(int i = 0; i < 25; i++){
+            members.add(new Member("bulk"+i, i, teamA));
+        }
+        memberBulkRepository.saveAll(members);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        Assertions.assertThat(memberRepository.search(condition)).hasSize(25);
+    }
+
+    @Test
+    public void streamSearchTest(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        long before = methodTimerCount("streamSearch", "success");
+        try (Stream<MemberTeamDto> result = memberRepository.streamSearch(condition)) {
+            Assertions.assertThat(result).extracting("username").containsExactlyInAnyOrder("member1","member2");
+            // 스트림을 닫을 때 기록한다
+            Assertions.assertThat(methodTimerCount("streamSearch", "success")).isEqualTo(before);
+        }
+        Assertions.assertThat(methodTimerCount("streamSearch", "success")).isEqualTo(before + 1);
+    }
+
+    private long methodTimerCount(String method, String outcome) {
+        Timer timer = meterRegistry.find("repository.method")
+                .tags("repository", "MemberRepository", "method", method, "outcome", outcome)
+                .timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    @Test
+    public void searchPageCountCacheTest(){
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1",10,teamA));
+        em.persist(new Member("member2",20,teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        PageRequest pageRequest = PageRequest.of(0, 1);
+
+        Assertions.assertThat(memberRepository.searchPage(condition,pageRequest).getTotalElements()).isEqualTo(2);
+
+        // insert 가 실행되면 캐시된 count 는 버려져야 한다
+        memberRepository.save(new Member("member3",30,teamA));
+        Assertions.assertThat(memberRepository.searchPage(condition,pageRequest).getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    public void uncommittedWriteNotCachedTest(){
+        Team team = new Team("uncommittedTeam");
+        em.persist(team);
+        em.persist(new Member("uncommitted1",10,team));
+        em.persist(new Member("uncommitted2",20,team));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("uncommittedTeam");
+        PageRequest pageRequest = PageRequest.of(0, 1);
+        // 쓰기를 한 트랜잭션 안에서는 자기 변경이 보인다
+        Assertions.assertThat(memberRepository.searchPage(condition,pageRequest).getTotalElements()).isEqualTo(2);
+
+        // 커밋 전 값이 캐시를 통해 다른 트랜잭션에 보이면 안 된다
+        TransactionTemplate other = new TransactionTemplate(transactionManager);
+        other.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        CompletableFuture<Long> total = CompletableFuture.supplyAsync(() -> other.execute(status ->
+                memberRepository.searchPage(condition, pageRequest).getTotalElements()));
+        CompletableFuture<List<Long>> teamIds = CompletableFuture.supplyAsync(() -> other.execute(status ->
+                teamIdCache.findIdsByName("uncommittedTeam")));
+        Assertions.assertThat(total.join()).isZero();
+        Assertions.assertThat(teamIds.join()).isEmpty();
+    }
+
+    @Test
+    public void searchSliceTest(){
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1",40,teamA));
+        em.persist(new Member("member2",20,teamA));
+        em.persist(new Member("member3",30,teamB));
+        em.persist(new Member("member4",20,teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+
+        CursorSlice<MemberTeamDto> first = memberRepository.searchSlice(condition, null, 3);
+        Assertions.assertThat(first.getContent()).extracting("username").containsExactly("member2","member4","member3");
+        Assertions.assertThat(first.isHasNext()).isTrue();
+
+        CursorSlice<MemberTeamDto> second = memberRepository.searchSlice(condition, first.getNextCursor(), 3);
+        Assertions.assertThat(second.getContent()).extracting("username").containsExactly("member1");
+        Assertions.assertThat(second.isHasNext()).isFalse();
+    }
+
     @Test
     public void querydslPredicateExecutorTest(){
         Team teamA = new Team("teamA");
@@ -129,4 +337,446 @@ class MemberRepositoryTest {
             System.out.println("member1 = " +member);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void searchShapesUseIndexes(){
+        // 인덱스 정의가 빠지면 여기서 실패한다
+        List<IndexAdvisor.FullScan> fullScans = indexAdvisor.findFullScans();
+        Assertions.assertThat(fullScans).isEmpty();
+    }
+
+    @Test
+    public void searchRecordsTest(){
+        Team team = new Team("recordTeam");
+        em.persist(team);
+        em.persist(new Member("record1",10,team));
+        em.persist(new Member("record2",20,team));
+        em.persist(new Member("record3",30,null));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("recordTeam");
+        condition.setAgeGoe(15);
+
+        // flush 전 변경도 보이고, JPA 검색과 같은 결과
+        List<MemberTeamRecord> records = memberRecordRepository.search(condition);
+        Assertions.assertThat(records).extracting(MemberTeamRecord::username, MemberTeamRecord::teamName)
+                .containsExactly(Assertions.tuple("record2", "recordTeam"));
+        Assertions.assertThat(records).extracting(MemberTeamRecord::memberId)
+                .containsExactlyElementsOf(memberRepository.search(condition).stream().map(MemberTeamDto::getMemberId).toList());
+
+        MemberSearchCondition noTeam = new MemberSearchCondition();
+        noTeam.setUsername("record3");
+        MemberTeamRecord withoutTeam = memberRecordRepository.search(noTeam).get(0);
+        Assertions.assertThat(withoutTeam.teamId()).isNull();
+        Assertions.assertThat(withoutTeam.age()).isEqualTo(30);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // 다른 스레드에서 조회하므로 데이터를 커밋해둔다
+    public void searchAsyncTest() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("asyncTeam");
+            em.persist(team);
+            em.persist(new Member("async1",10,team));
+            em.persist(new Member("async2",20,team));
+            em.persist(new Member("async3",30,team));
+        });
+        try {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("asyncTeam");
+
+            List<MemberTeamDto> result = memberRepository.searchAsync(condition).get(5, TimeUnit.SECONDS);
+            Assertions.assertThat(result).extracting("username").containsExactlyInAnyOrder("async1", "async2", "async3");
+
+            // 한 건씩 요청하는 구독자
+            List<MemberTeamDto> streamed = new CopyOnWriteArrayList<>();
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            long publisherCount = methodTimerCount("searchPublisher", "success");
+            memberRepository.searchPublisher(condition).subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(MemberTeamDto item) {
+                    streamed.add(item);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    done.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    done.complete(null);
+                }
+            });
+            done.get(5, TimeUnit.SECONDS);
+            Assertions.assertThat(streamed).extracting("username").containsExactlyInAnyOrder("async1", "async2", "async3");
+            // 구독이 끝날 때(onComplete) 기록한다
+            Assertions.assertThat(methodTimerCount("searchPublisher", "success")).isEqualTo(publisherCount + 1);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.username like 'async%'").executeUpdate();
+                em.createQuery("delete from Team t where t.name = 'asyncTeam'").executeUpdate();
+            });
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // count 는 다른 스레드/커넥션에서 조회하므로 데이터를 커밋해둔다
+    public void applyPaginationParallelTest(){
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team team = new Team("parallelTeam");
+            em.persist(team);
+            for (int i = 1; i <= 5; i++) {
+                em.persist(new Member("parallel" + i, i * 10, team));
+            }
+        });
+        try {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("parallelTeam");
+
+            // 중간 페이지는 count 결과를 쓴다
+            Page<Member> first = memberTestRepository.applyPaginationParallel(condition,
+                    PageRequest.of(0, 2, Sort.by("age")));
+            Assertions.assertThat(first.getContent()).extracting("username").containsExactly("parallel1", "parallel2");
+            Assertions.assertThat(first.getTotalElements()).isEqualTo(5);
+
+            Page<Member> last = memberTestRepository.applyPaginationParallel(condition,
+                    PageRequest.of(2, 2, Sort.by("age")));
+            Assertions.assertThat(last.getContent()).extracting("username").containsExactly("parallel5");
+            Assertions.assertThat(last.getTotalElements()).isEqualTo(5);
+
+            // 한 페이지에 다 들어오면 count 는 취소되고 content 크기가 전체 수가 된다
+            Page<Member> all = memberTestRepository.applyPaginationParallel(condition, PageRequest.of(0, 10));
+            Assertions.assertThat(all.getContent()).hasSize(5);
+            Assertions.assertThat(all.getTotalElements()).isEqualTo(5);
+
+            Page<Member> unpaged = memberTestRepository.applyPaginationParallel(condition, Pageable.unpaged());
+            Assertions.assertThat(unpaged.getTotalElements()).isEqualTo(5);
+
+            // 병렬 count 허용 수를 다 쓰고 있으면 순차로 센다
+            int drained = countQueryPermits.drainPermits();
+            try {
+                Page<Member> sequential = memberTestRepository.applyPaginationParallel(condition,
+                        PageRequest.of(1, 2, Sort.by("age")));
+                Assertions.assertThat(sequential.getContent()).extracting("username").containsExactly("parallel3", "parallel4");
+                Assertions.assertThat(sequential.getTotalElements()).isEqualTo(5);
+            } finally {
+                countQueryPermits.release(drained);
+            }
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.username like 'parallel%'").executeUpdate();
+                em.createQuery("delete from Team t where t.name = 'parallelTeam'").executeUpdate();
+            });
+        }
+    }
+
+    @Test
+    public void batchSearchTest(){
+        Team teamA = new Team("batchA");
+        Team teamB = new Team("batchB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("batch1",10,teamA));
+        em.persist(new Member("batch2",20,teamA));
+        em.persist(new Member("batch3",30,teamB));
+        em.persist(new Member("batch4",40,teamB));
+
+        MemberSearchCondition byTeamA = new MemberSearchCondition();
+        byTeamA.setTeamName("batchA");
+        MemberSearchCondition byTeamB = new MemberSearchCondition();
+        byTeamB.setTeamName("batchB");
+        MemberSearchCondition olderInTeamB = new MemberSearchCondition();
+        olderInTeamB.setTeamName("batchB");
+        olderInTeamB.setAgeGoe(35);
+        MemberSearchCondition byUsername = new MemberSearchCondition();
+        byUsername.setUsername("batch2");
+        MemberSearchCondition unknownTeam = new MemberSearchCondition();
+        unknownTeam.setTeamName("noSuchBatchTeam");
+
+        List<List<MemberTeamDto>> results = memberRepository.batchSearch(
+                List.of(byTeamA, byTeamB, olderInTeamB, byUsername, unknownTeam));
+        Assertions.assertThat(results).hasSize(5);
+        Assertions.assertThat(results.get(0)).extracting("username").containsExactly("batch1", "batch2");
+        Assertions.assertThat(results.get(1)).extracting("username").containsExactly("batch3", "batch4");
+        Assertions.assertThat(results.get(2)).extracting("username").containsExactly("batch4");
+        Assertions.assertThat(results.get(3)).extracting("username").containsExactly("batch2");
+        Assertions.assertThat(results.get(4)).isEmpty();
+
+        // 팀 id 가 캐시된 뒤에는 조건 4개가 SQL 한 번
+        try (QueryGuard.Scope scope = queryGuard.open("batchSearch")) {
+            memberRepository.batchSearch(List.of(byTeamA, byTeamB, olderInTeamB, byUsername));
+            Assertions.assertThat(scope.totalCount()).isEqualTo(1);
+        }
+
+        // 조건 없는 검색은 전체 조회가 되므로 받지 않는다
+        Assertions.assertThatThrownBy(() -> memberRepository.batchSearch(List.of(byTeamA, new MemberSearchCondition())))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void searchPageSortPolicyTest(){
+        Team sortTeam = new Team("sortTeam");
+        em.persist(sortTeam);
+        em.persist(new Member("sort1",10,sortTeam));
+        em.persist(new Member("sort2",20,sortTeam));
+        em.persist(new Member("sort3",20,sortTeam));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sortTeam");
+        double rejected = meterRegistry.counter(SortPolicy.REJECTED_METRIC, "repository", "MemberRepository",
+                "property", "other", "reason", "not-allowed").count();
+
+        // 연관 경로 정렬은 빠지고, 같은 나이는 id 내림차순으로 순서가 정해진다
+        Page<MemberTeamDto> result = memberRepository.searchPage(condition,
+                PageRequest.of(0, 10, Sort.by(Sort.Order.desc("age"), Sort.Order.asc("team.name"))));
+        Assertions.assertThat(result.getContent()).extracting("username").containsExactly("sort3", "sort2", "sort1");
+        Assertions.assertThat(meterRegistry.counter(SortPolicy.REJECTED_METRIC, "repository", "MemberRepository",
+                "property", "other", "reason", "not-allowed").count()).isEqualTo(rejected + 1);
+
+        // username 정렬은 인덱스로 id 까지 정렬할 수 없어서 받지 않는다
+        result = memberRepository.searchPage(condition, PageRequest.of(0, 10, Sort.by(Sort.Order.desc("username"))));
+        Assertions.assertThat(result.getContent()).extracting("username").containsExactly("sort1", "sort2", "sort3");
+        Assertions.assertThat(meterRegistry.counter(SortPolicy.REJECTED_METRIC, "repository", "MemberRepository",
+                "property", "other", "reason", "not-allowed").count()).isEqualTo(rejected + 2);
+
+        // 방향이 섞인 정렬은 첫 정렬의 방향으로 맞춘다 (age asc, id desc -> age asc, id asc)
+        double mixed = meterRegistry.counter(SortPolicy.REJECTED_METRIC, "repository", "MemberRepository",
+                "property", "id", "reason", "mixed-direction").count();
+        result = memberRepository.searchPage(condition,
+                PageRequest.of(0, 10, Sort.by(Sort.Order.asc("age"), Sort.Order.desc("id"))));
+        Assertions.assertThat(result.getContent()).extracting("username").containsExactly("sort1", "sort2", "sort3");
+        Assertions.assertThat(meterRegistry.counter(SortPolicy.REJECTED_METRIC, "repository", "MemberRepository",
+                "property", "id", "reason", "mixed-direction").count()).isEqualTo(mixed + 1);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // 커밋 직전에 집계하므로 실제로 커밋한다
+    public void teamStatsTest(){
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            Team statsA = new Team("statsA");
+            Team statsB = new Team("statsB");
+            em.persist(statsA);
+            em.persist(statsB);
+            em.persist(new Member("stats1",10,statsA));
+            em.persist(new Member("stats2",20,statsA));
+            em.persist(new Member("stats3",30,statsB));
+        });
+        try {
+            assertTeamStats("statsA", 2, 30, 10, 20);
+            assertTeamStats("statsB", 1, 30, 30, 30);
+
+            // 팀 이동 + 나이 변경은 예전 팀과 새 팀을 모두 다시 센다
+            transactionTemplate.executeWithoutResult(status -> {
+                Member stats2 = em.createQuery("select m from Member m where m.username = 'stats2'", Member.class)
+                        .getSingleResult();
+                Team statsB = em.createQuery("select t from Team t where t.name = 'statsB'", Team.class)
+                        .getSingleResult();
+                stats2.changeTeam(statsB);
+                stats2.changeAge(40);
+            });
+            assertTeamStats("statsA", 1, 10, 10, 10);
+            assertTeamStats("statsB", 2, 70, 30, 40);
+
+            // bulk delete 는 chunk 마다 해당 팀을 다시 센다
+            memberBulkOperations.delete(member.username.eq("stats1"), progress -> {});
+            assertTeamStats("statsA", 0, 0, null, null);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.username like 'stats%'").executeUpdate();
+                em.createQuery("delete from TeamStats s where s.teamId in "
+                        + "(select t.id from Team t where t.name like 'stats%')").executeUpdate();
+                em.createQuery("delete from Team t where t.name like 'stats%'").executeUpdate();
+            });
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void teamStatsConcurrentFirstMembersTest() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Long teamId = transactionTemplate.execute(status -> {
+            Team team = new Team("statsConcurrent");
+            em.persist(team);
+            return team.getId();
+        });
+        try {
+            // 두 트랜잭션이 먼저 읽기(스냅샷)를 한 뒤 집계 row 가 없는 팀에 동시에 member 를 넣는다
+            CountDownLatch started = new CountDownLatch(2);
+            List<CompletableFuture<Void>> writers = new ArrayList<>();
+            for (int i = 1; i <= 2; i++) {
+                int age = i * 10;
+                writers.add(CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+                    Team team = em.find(Team.class, teamId);
+                    em.createQuery("select count(m) from Member m").getSingleResult();
+                    started.countDown();
+                    try {
+                        started.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    em.persist(new Member("statsConcurrent" + age, age, team));
+                })));
+            }
+            CompletableFuture.allOf(writers.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+            assertTeamStats("statsConcurrent", 2, 30, 10, 20);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.team.id = :teamId").setParameter("teamId", teamId).executeUpdate();
+                em.createQuery("delete from TeamStats s where s.teamId = :teamId").setParameter("teamId", teamId).executeUpdate();
+                em.createQuery("delete from Team t where t.id = :teamId").setParameter("teamId", teamId).executeUpdate();
+            });
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void teamStatsOppositeOrderWritersTest() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Long> teamIds = transactionTemplate.execute(status -> {
+            Team statsOrderA = new Team("statsOrderA");
+            Team statsOrderB = new Team("statsOrderB");
+            em.persist(statsOrderA);
+            em.persist(statsOrderB);
+            return List.of(statsOrderA.getId(), statsOrderB.getId());
+        });
+        try {
+            // 한쪽은 A -> B, 다른 쪽은 B -> A 순서로 member 를 넣는다. 집계 row 를 쓰기 시점에 잠그면 서로 기다리게 된다
+            CountDownLatch firstWritten = new CountDownLatch(2);
+            List<CompletableFuture<Void>> writers = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                List<Long> order = i == 0 ? teamIds : List.of(teamIds.get(1), teamIds.get(0));
+                int age = (i + 1) * 10;
+                writers.add(CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+                    em.persist(new Member("statsOrder" + age, age, em.find(Team.class, order.get(0))));
+                    firstWritten.countDown();
+                    try {
+                        firstWritten.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    em.persist(new Member("statsOrder" + (age + 1), age + 1, em.find(Team.class, order.get(1))));
+                })));
+            }
+            CompletableFuture.allOf(writers.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+            assertTeamStats("statsOrderA", 2, 31, 10, 21);
+            assertTeamStats("statsOrderB", 2, 31, 11, 20);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.team.id in :teamIds").setParameter("teamIds", teamIds).executeUpdate();
+                em.createQuery("delete from TeamStats s where s.teamId in :teamIds").setParameter("teamIds", teamIds).executeUpdate();
+                em.createQuery("delete from Team t where t.id in :teamIds").setParameter("teamIds", teamIds).executeUpdate();
+            });
+        }
+    }
+
+    @Test
+    public void applyPaginationSargableTest(){
+        Team sargableTeam = new Team("sargableTeam");
+        em.persist(sargableTeam);
+        em.persist(new Member("SargableAlpha",10,sargableTeam));
+        em.persist(new Member("sargableBeta",20,sargableTeam));
+        em.flush();
+
+        // lower(username) 은 username_lower 가상 컬럼 조건으로 바뀌어 실행되므로 경고가 늘지 않는다
+        double before = nonSargableCount();
+        Page<Member> result = memberTestRepository.applyPagination(member.username.lower().eq("sargablealpha"),
+                PageRequest.of(0, 10));
+        Assertions.assertThat(result.getContent()).extracting("username").containsExactly("SargableAlpha");
+        Assertions.assertThat(nonSargableCount()).isEqualTo(before);
+    }
+
+    private double nonSargableCount(){
+        return meterRegistry.find(NonSargableSqlInspector.METRIC).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    @Test
+    public void usernameMatchTest(){
+        Team matchTeam = new Team("matchTeam");
+        em.persist(matchTeam);
+        em.persist(new Member("matchAlpha",10,matchTeam));
+        em.persist(new Member("MatchBeta",20,matchTeam));
+        em.persist(new Member("xmatch_gamma",30,matchTeam));
+
+        MemberSearchCondition prefix = usernameCondition("match", UsernameMatch.PREFIX);
+        Assertions.assertThat(memberRepository.search(prefix)).extracting("username")
+                .containsExactlyInAnyOrder("matchAlpha", "MatchBeta");
+        Assertions.assertThat(memberRepository.searchPage(prefix, PageRequest.of(0, 10)).getContent())
+                .extracting("username").containsExactlyInAnyOrder("matchAlpha", "MatchBeta");
+
+        // trigram 후보로 좁힌 뒤 like 로 확인한다. _ 는 와일드카드가 아니다
+        MemberSearchCondition contains = usernameCondition("tch_g", UsernameMatch.CONTAINS);
+        Assertions.assertThat(memberRepository.search(contains)).extracting("username").containsExactly("xmatch_gamma");
+        Assertions.assertThat(memberRepository.searchPage(contains, PageRequest.of(0, 10)).getContent())
+                .extracting("username").containsExactly("xmatch_gamma");
+        Assertions.assertThat(memberRepository.search(usernameCondition("atchb", UsernameMatch.CONTAINS)))
+                .extracting("username").containsExactly("MatchBeta");
+
+        MemberSearchCondition ignoreCase = usernameCondition("MATCHALPHA", UsernameMatch.IGNORE_CASE);
+        Assertions.assertThat(memberRepository.search(ignoreCase)).extracting("username").containsExactly("matchAlpha");
+
+        List<List<MemberTeamDto>> batch = memberRepository.batchSearch(List.of(prefix, contains, ignoreCase));
+        Assertions.assertThat(batch.get(0)).extracting("username").containsExactlyInAnyOrder("matchAlpha", "MatchBeta");
+        Assertions.assertThat(batch.get(1)).extracting("username").containsExactly("xmatch_gamma");
+        Assertions.assertThat(batch.get(2)).extracting("username").containsExactly("matchAlpha");
+
+        // EXACT 도 SQL in (...) 과 같은 collation 규칙으로 나눈다
+        MemberSearchCondition exactOtherCase = usernameCondition("MATCHBETA", UsernameMatch.EXACT);
+        Assertions.assertThat(memberRepository.search(exactOtherCase)).extracting("username").containsExactly("MatchBeta");
+        Assertions.assertThat(memberRepository.batchSearch(List.of(exactOtherCase, ignoreCase)).get(0))
+                .extracting("username").containsExactly("MatchBeta");
+
+        // JDBC record 검색도 같은 규칙으로 찾는다
+        Assertions.assertThat(memberRecordRepository.search(prefix)).extracting(MemberTeamRecord::username)
+                .containsExactlyInAnyOrder("matchAlpha", "MatchBeta");
+        Assertions.assertThat(memberRecordRepository.search(contains)).extracting(MemberTeamRecord::username)
+                .containsExactly("xmatch_gamma");
+        Assertions.assertThat(memberRecordRepository.search(ignoreCase)).extracting(MemberTeamRecord::username)
+                .containsExactly("matchAlpha");
+
+        // 엔티티 리스너를 거치지 않고 SQL 로 직접 넣은 member 도 catch-up 으로 후보에 들어간다
+        em.createNativeQuery("insert into member (username, age, team_id) values ('matchOutside', 40, ?)")
+                .setParameter(1, matchTeam.getId())
+                .executeUpdate();
+        MemberSearchCondition outside = usernameCondition("hOutsid", UsernameMatch.CONTAINS);
+        Assertions.assertThat(memberRepository.search(outside)).extracting("username").containsExactly("matchOutside");
+        Assertions.assertThat(memberRecordRepository.search(outside)).extracting(MemberTeamRecord::username)
+                .containsExactly("matchOutside");
+    }
+
+    private MemberSearchCondition usernameCondition(String username, UsernameMatch match){
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setUsernameMatch(match);
+        condition.setTeamName("matchTeam");
+        return condition;
+    }
+
+    private void assertTeamStats(String teamName, long memberCount, long ageSum, Integer ageMin, Integer ageMax){
+        TeamStatsDto stats = teamStatsRepository.findAll().stream()
+                .filter(dto -> dto.getTeamName().equals(teamName))
+                .findFirst()
+                .orElseThrow();
+        Assertions.assertThat(stats.getMemberCount()).isEqualTo(memberCount);
+        Assertions.assertThat(stats.getAgeSum()).isEqualTo(ageSum);
+        Assertions.assertThat(stats.getAgeMin()).isEqualTo(ageMin);
+        Assertions.assertThat(stats.getAgeMax()).isEqualTo(ageMax);
+    }
+}